@@ -0,0 +1,167 @@
+package com.drenn.cartographica.client;
+
+import com.mojang.serialization.Lifecycle;
+import net.minecraft.SharedConstants;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.core.MappedRegistry;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeGenerationSettings;
+import net.minecraft.world.level.biome.BiomeSpecialEffects;
+import net.minecraft.world.level.biome.MobSpawnSettings;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunk-to-tile rasterization on synthetic terrain: coloring every column of a chunk,
+ * including biome tints through the game's tint providers, then copying it into the tile.
+ * Bootstraps the game's block registries once per fork; no client or world is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkRasterBenchmark {
+
+    private static final int TILE_SIZE = TileManager.TILE_SIZE;
+    private static final int CHUNKS_PER_TILE = TILE_SIZE / 16;
+
+    private BlockColors blockColors;
+    private ChunkSnapshot[] chunks;
+    private int[] chunkPixels;
+    private int[] tile;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        blockColors = BlockColors.createDefault();
+
+        List<BlockState> surfaces = List.of(
+                Blocks.GRASS_BLOCK.defaultBlockState(), Blocks.OAK_LEAVES.defaultBlockState(),
+                Blocks.WATER.defaultBlockState(), Blocks.STONE.defaultBlockState(),
+                Blocks.SAND.defaultBlockState(), Blocks.SNOW_BLOCK.defaultBlockState());
+        installColorTable(surfaces);
+
+        Registry<Biome> biomes = biomeRegistry();
+        SplittableRandom random = new SplittableRandom(1);
+
+        chunks = new ChunkSnapshot[CHUNKS_PER_TILE * CHUNKS_PER_TILE];
+        for (int i = 0; i < chunks.length; i++) {
+            int[] heights = new int[ChunkSnapshot.COLUMNS];
+            int[] stateIds = new int[ChunkSnapshot.COLUMNS];
+            int[] biomeIds = new int[ChunkSnapshot.COLUMNS];
+            byte[] waterDepths = new byte[ChunkSnapshot.COLUMNS];
+            for (int column = 0; column < ChunkSnapshot.COLUMNS; column++) {
+                BlockState surface = surfaces.get(random.nextInt(surfaces.size()));
+                heights[column] = 62 + random.nextInt(8);
+                stateIds[column] = Block.getId(surface);
+                biomeIds[column] = random.nextInt(2);
+                waterDepths[column] = (byte) (surface.is(Blocks.WATER) ? random.nextInt(12) : 0);
+            }
+            chunks[i] = ChunkSnapshot.of(i % CHUNKS_PER_TILE, i / CHUNKS_PER_TILE, -64, 384,
+                    heights, stateIds, biomeIds, waterDepths, biomes);
+        }
+
+        chunkPixels = new int[ChunkSnapshot.COLUMNS];
+        tile = new int[TILE_SIZE * TILE_SIZE];
+    }
+
+    @Benchmark
+    public int[] renderChunk() {
+        ChunkSnapshot snapshot = chunks[next++ & (chunks.length - 1)];
+        ChunkRasterizer.renderChunk(snapshot, chunkPixels, blockColors);
+        copyIntoTile(snapshot);
+        return tile;
+    }
+
+    /**
+     * All 1024 chunks of one tile on one thread
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] renderTile() {
+        for (ChunkSnapshot snapshot : chunks) {
+            ChunkRasterizer.renderChunk(snapshot, chunkPixels, blockColors);
+            copyIntoTile(snapshot);
+        }
+        return tile;
+    }
+
+    private void copyIntoTile(ChunkSnapshot snapshot) {
+        int originX = snapshot.getChunkX() << 4;
+        int originZ = snapshot.getChunkZ() << 4;
+        for (int dz = 0; dz < 16; dz++) {
+            System.arraycopy(chunkPixels, dz * 16, tile, (originZ + dz) * TILE_SIZE + originX, 16);
+        }
+    }
+
+    /**
+     * Flat colors per state; grass, leaves and water are tinted, as in the game
+     */
+    private static void installColorTable(List<BlockState> surfaces) {
+        int stateCount = Block.BLOCK_STATE_REGISTRY.size();
+        int[] colors = new int[stateCount];
+        int[] baseColors = new int[stateCount];
+        boolean[] tinted = new boolean[stateCount];
+
+        SplittableRandom random = new SplittableRandom(2);
+        for (BlockState state : surfaces) {
+            int stateId = Block.getId(state);
+            baseColors[stateId] = random.nextInt(0x1000000);
+            colors[stateId] = 0xFF000000 | BlockColorTable.brightenColor(baseColors[stateId], BlockColorTable.BRIGHTNESS);
+            tinted[stateId] = state.is(Blocks.GRASS_BLOCK) || state.is(Blocks.OAK_LEAVES) || state.is(Blocks.WATER);
+        }
+        BlockColorTable.install(colors, baseColors, tinted);
+    }
+
+    /**
+     * Biomes normally come from the world's datapacks; two synthetic ones stand in for them
+     */
+    private static Registry<Biome> biomeRegistry() {
+        MappedRegistry<Biome> registry = new MappedRegistry<>(Registries.BIOME, Lifecycle.stable());
+        Registry.register(registry, ResourceKey.create(Registries.BIOME, ResourceLocation.withDefaultNamespace("plains")),
+                biome(0.8f, 0.4f, 0x3F76E4));
+        Registry.register(registry, ResourceKey.create(Registries.BIOME, ResourceLocation.withDefaultNamespace("swamp")),
+                biome(0.8f, 0.9f, 0x617B64));
+        return registry;
+    }
+
+    private static Biome biome(float temperature, float downfall, int waterColor) {
+        return new Biome.BiomeBuilder()
+                .hasPrecipitation(true)
+                .temperature(temperature)
+                .downfall(downfall)
+                .specialEffects(new BiomeSpecialEffects.Builder()
+                        .fogColor(0xC0D8FF)
+                        .waterColor(waterColor)
+                        .waterFogColor(0x050533)
+                        .skyColor(0x78A7FF)
+                        .build())
+                .mobSpawnSettings(MobSpawnSettings.EMPTY)
+                .generationSettings(BiomeGenerationSettings.EMPTY)
+                .build();
+    }
+}
@@ -0,0 +1,96 @@
+package com.drenn.cartographica.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-column color resolution: sprite sampling when the color table is built, then the
+ * table lookup and tint math done for every column drawn. Uses synthetic sprites and a
+ * synthetic color table, so no game client is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorResolutionBenchmark {
+
+    private static final int STATES = 4096;
+    private static final int SPRITE_SIZE = 16;
+
+    private int[] sprite;
+    private int[] stateIds;
+    private int[] tints;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(1);
+
+        // ABGR texture with a quarter of its pixels transparent, like leaves
+        sprite = new int[SPRITE_SIZE * SPRITE_SIZE];
+        for (int i = 0; i < sprite.length; i++) {
+            int alpha = random.nextInt(4) == 0 ? 0 : 0xFF;
+            sprite[i] = alpha << 24 | random.nextInt(0x1000000);
+        }
+
+        int[] colors = new int[STATES];
+        int[] baseColors = new int[STATES];
+        boolean[] tinted = new boolean[STATES];
+        for (int i = 0; i < STATES; i++) {
+            baseColors[i] = random.nextInt(0x1000000);
+            colors[i] = 0xFF000000 | BlockColorTable.brightenColor(baseColors[i], BlockColorTable.BRIGHTNESS);
+            tinted[i] = random.nextInt(8) == 0;
+        }
+        BlockColorTable.install(colors, baseColors, tinted);
+
+        // One chunk's worth of columns
+        stateIds = new int[ChunkSnapshot.COLUMNS];
+        tints = new int[ChunkSnapshot.COLUMNS];
+        for (int i = 0; i < stateIds.length; i++) {
+            stateIds[i] = random.nextInt(STATES);
+            tints[i] = 0x40000000 | random.nextInt(0x1000000);
+        }
+    }
+
+    @Benchmark
+    public int sampleSpriteAverage() {
+        return BlockColorTable.sampleAverage(SPRITE_SIZE, SPRITE_SIZE, (x, y) -> sprite[y * SPRITE_SIZE + x]);
+    }
+
+    @Benchmark
+    public int multiplyColors() {
+        return BlockColorTable.multiplyColors(0x7FB238, 0x91BD59);
+    }
+
+    @Benchmark
+    public int brightenColor() {
+        return BlockColorTable.brightenColor(0x7FB238, BlockColorTable.BRIGHTNESS);
+    }
+
+    /**
+     * The table lookups and tinting for the 256 columns of a chunk, without the game's tint providers
+     */
+    @Benchmark
+    public void resolveChunkColumns(Blackhole blackhole) {
+        for (int i = 0; i < stateIds.length; i++) {
+            int stateId = stateIds[i];
+            int color = BlockColorTable.isTinted(stateId)
+                    ? BlockColorTable.applyTint(BlockColorTable.getBaseColor(stateId), tints[i] & 0xFFFFFF)
+                    : BlockColorTable.getColor(stateId);
+            blackhole.consume(color);
+        }
+    }
+}
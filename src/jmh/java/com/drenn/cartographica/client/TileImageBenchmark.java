@@ -0,0 +1,62 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.storage.SyntheticTiles;
+import com.mojang.blaze3d.platform.NativeImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copying tile pixels into a NativeImage before upload. The per-pixel copy is the
+ * baseline the bulk copy replaced. Needs no GL context, only LWJGL's native memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileImageBenchmark {
+
+    private static final int TILE_SIZE = TileManager.TILE_SIZE;
+
+    private int[] pixels;
+    private NativeImage image;
+
+    @Setup
+    public void setup() {
+        pixels = SyntheticTiles.terrain(1);
+        image = new NativeImage(TILE_SIZE, TILE_SIZE, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.close();
+    }
+
+    @Benchmark
+    public NativeImage bulkCopy() {
+        TileTextureUpdater.copyAll(pixels, image);
+        return image;
+    }
+
+    @Benchmark
+    public NativeImage perPixelCopy() {
+        for (int z = 0; z < TILE_SIZE; z++) {
+            for (int x = 0; x < TILE_SIZE; x++) {
+                image.setPixelRGBA(x, z, pixels[z * TILE_SIZE + x]);
+            }
+        }
+        return image;
+    }
+}
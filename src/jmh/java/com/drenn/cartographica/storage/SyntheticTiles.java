@@ -0,0 +1,48 @@
+package com.drenn.cartographica.storage;
+
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible tile pixels for benchmarks, shaped like real map tiles.
+ */
+public final class SyntheticTiles {
+
+    public static final int TILE_SIZE = 512;
+
+    private SyntheticTiles() {
+    }
+
+    /**
+     * A tile of a few dozen colors in patches, like terrain; encodes with a palette
+     */
+    public static int[] terrain(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] colors = new int[48];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        for (int z = 0; z < TILE_SIZE; z++) {
+            for (int x = 0; x < TILE_SIZE; x++) {
+                // Patches of 8x8 columns, with a little per-column variation
+                int patch = ((x >> 3) * 31 + (z >> 3) * 17) % colors.length;
+                int variant = random.nextInt(8) == 0 ? 1 : 0;
+                pixels[z * TILE_SIZE + x] = colors[(patch + variant) % colors.length];
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * A tile of unrelated colors; too many for a palette, so it encodes raw
+     */
+    public static int[] noise(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+}
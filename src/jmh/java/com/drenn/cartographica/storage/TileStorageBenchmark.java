@@ -0,0 +1,89 @@
+package com.drenn.cartographica.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tile save and load: the codec alone, and the codec with a region file round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileStorageBenchmark {
+
+    private static final int TILE_SIZE = SyntheticTiles.TILE_SIZE;
+
+    @Param({"terrain", "noise"})
+    public String content;
+
+    private int[] pixels;
+    private byte[] encoded;
+    private Path directory;
+    private TileRegionStore store;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pixels = content.equals("noise") ? SyntheticTiles.noise(1) : SyntheticTiles.terrain(1);
+        encoded = TileCodec.encode(pixels, TILE_SIZE, TILE_SIZE);
+
+        directory = Files.createTempDirectory("cartographica-bench");
+        store = new TileRegionStore(directory, "ctr");
+        for (int i = 0; i < 64; i++) {
+            store.write(i % 8, i / 8, encoded);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return TileCodec.encode(pixels, TILE_SIZE, TILE_SIZE);
+    }
+
+    @Benchmark
+    public int[] decode() throws IOException {
+        return TileCodec.decode(encoded, TILE_SIZE, TILE_SIZE);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        int i = next++ & 63;
+        store.write(i % 8, i / 8, TileCodec.encode(pixels, TILE_SIZE, TILE_SIZE));
+    }
+
+    @Benchmark
+    public int[] load() throws IOException {
+        int i = next++ & 63;
+        return TileCodec.decode(store.read(i % 8, i / 8), TILE_SIZE, TILE_SIZE);
+    }
+}
@@ -0,0 +1,325 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.Cartographica;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.client.renderer.block.BlockModelShaper;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.neoforged.api.distmarker.Dist;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.client.event.ModelEvent;
+
+/**
+ * Map colors for every BlockState, indexed by block-state id.
+ * Built once per resource reload so the column loop is a single array load.
+ */
+@EventBusSubscriber(modid = Cartographica.MOD_ID, value = Dist.CLIENT, bus = EventBusSubscriber.Bus.MOD)
+public class BlockColorTable {
+
+    public static final float BRIGHTNESS = 1.15f;
+    private static final int FALLBACK_COLOR = 0xFF888888;
+    // Bump when columnColor's shading changes, so stored tiles get recolored
+    private static final int SHADING_VERSION = 1;
+
+    private static volatile Table table;
+    // Answers every biome color lookup, so providers reveal themselves without a biome to resolve against
+    private static final ColumnTintGetter TINT_PROBE = new ColumnTintGetter() {
+        @Override
+        public int getBlockTint(BlockPos pos, ColorResolver colorResolver) {
+            return 0xFFFFFF;
+        }
+    }.setBounds(-64, 384);
+
+    @SubscribeEvent
+    public static void onModelsBaked(ModelEvent.BakingCompleted event) {
+        rebuild();
+    }
+
+    /**
+     * Final ARGB color for a state, brighten step already applied.
+     * For tinted states this is the untinted color; see {@link #isTinted(int)}.
+     */
+    public static int getColor(int stateId) {
+        Table current = getTable();
+        if (stateId < 0 || stateId >= current.colors.length) {
+            return FALLBACK_COLOR;
+        }
+        return current.colors[stateId];
+    }
+
+    /**
+     * Sampled texture color (RGB, not brightened) used as the base for biome tinting
+     */
+    public static int getBaseColor(int stateId) {
+        Table current = getTable();
+        if (stateId < 0 || stateId >= current.baseColors.length) {
+            return FALLBACK_COLOR & 0xFFFFFF;
+        }
+        return current.baseColors[stateId];
+    }
+
+    /**
+     * Whether Minecraft registered a tint provider for this state's block
+     */
+    public static boolean isTinted(int stateId) {
+        Table current = getTable();
+        return stateId >= 0 && stateId < current.tinted.length && current.tinted[stateId];
+    }
+
+    /**
+     * Apply a biome tint to a base color, producing the same result as an untinted lookup would
+     */
+    public static int applyTint(int baseColor, int tintColor) {
+        if (tintColor == -1 || tintColor == 0xFFFFFF) {
+            return 0xFF000000 | brightenColor(baseColor, BRIGHTNESS);
+        }
+        return 0xFF000000 | brightenColor(multiplyColors(baseColor, tintColor), BRIGHTNESS);
+    }
+
+    /**
+     * Hash of every color in the table and of {@link #SHADING_VERSION}; changes when a resource
+     * reload changes any map color
+     */
+    public static long getFingerprint() {
+        return getTable().fingerprint;
+    }
+
+    /**
+     * Whether the table has been built (or installed) yet
+     */
+    public static boolean isReady() {
+        return table != null;
+    }
+
+    private static Table getTable() {
+        Table current = table;
+        if (current == null) {
+            // Sampling models off the client thread is unsafe, so workers never build it themselves
+            throw new IllegalStateException("Block color table has not been built yet");
+        }
+        return current;
+    }
+
+    /**
+     * Resample every block model. Client thread only.
+     */
+    public static void rebuild() {
+        build();
+    }
+
+    /**
+     * Build the table if the model bake happened before we subscribed. Client thread only.
+     */
+    public static void ensureBuilt() {
+        if (table == null) {
+            build();
+        }
+    }
+
+    /**
+     * Whether a tint provider is registered for the state, probed through the public color lookup
+     * with a stand-in level: untinted states answer -1, tinted ones a color (or throw on lookups
+     * the stand-in cannot answer). A null level is not enough, as water and sugar cane answer -1
+     * without one.
+     */
+    public static synchronized boolean hasTintProvider(BlockColors blockColors, BlockState blockState) {
+        try {
+            return blockColors.getColor(blockState, TINT_PROBE.set(null, blockState), BlockPos.ZERO, 0) != -1;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Use prebuilt colors instead of sampling the loaded block models, for runs without a
+     * game client (benchmarks, offline rendering). Arrays are indexed by block-state id.
+     */
+    public static synchronized void install(int[] colors, int[] baseColors, boolean[] tinted) {
+        table = new Table(colors, baseColors, tinted);
+    }
+
+    private static synchronized Table build() {
+        long start = System.nanoTime();
+
+        Minecraft minecraft = Minecraft.getInstance();
+        BlockColors blockColors = minecraft.getBlockColors();
+        BlockModelShaper modelShaper = minecraft.getBlockRenderer().getBlockModelShaper();
+
+        int stateCount = Block.BLOCK_STATE_REGISTRY.size();
+        int[] colors = new int[stateCount];
+        int[] baseColors = new int[stateCount];
+        boolean[] tinted = new boolean[stateCount];
+
+        for (BlockState blockState : Block.BLOCK_STATE_REGISTRY) {
+            int stateId = Block.getId(blockState);
+            if (stateId < 0 || stateId >= stateCount) {
+                continue;
+            }
+
+            if (blockState.isAir()) {
+                colors[stateId] = 0x00000000;
+                continue;
+            }
+
+            try {
+                TextureAtlasSprite sprite = modelShaper.getBlockModel(blockState).getParticleIcon();
+                int textureColor = sampleSpriteAverage(sprite);
+
+                baseColors[stateId] = textureColor;
+                colors[stateId] = 0xFF000000 | brightenColor(textureColor, BRIGHTNESS);
+                tinted[stateId] = hasTintProvider(blockColors, blockState);
+            } catch (Exception e) {
+                baseColors[stateId] = FALLBACK_COLOR & 0xFFFFFF;
+                colors[stateId] = FALLBACK_COLOR;
+            }
+        }
+
+        Table built = new Table(colors, baseColors, tinted);
+        table = built;
+
+        Cartographica.LOGGER.info("Built block color table for {} states in {} ms",
+                stateCount, (System.nanoTime() - start) / 1_000_000);
+        return built;
+    }
+
+    /**
+     * Reads one ABGR pixel of a texture
+     */
+    @FunctionalInterface
+    public interface PixelReader {
+        int getPixelRGBA(int x, int y);
+    }
+
+    /**
+     * Sample texture color - just read the pixels!
+     */
+    static int sampleSpriteAverage(TextureAtlasSprite sprite) {
+        try {
+            return sampleAverage(sprite.contents().width(), sprite.contents().height(),
+                    (x, y) -> sprite.getPixelRGBA(0, x, y));
+        } catch (Exception e) {
+            Cartographica.LOGGER.error("Error sampling sprite: {}", e.getMessage());
+            return 0x888888;
+        }
+    }
+
+    /**
+     * Average RGB of the opaque pixels on a 4x4 sample grid
+     */
+    public static int sampleAverage(int width, int height, PixelReader pixels) {
+        if (width == 0 || height == 0) {
+            return 0x888888;
+        }
+
+        long totalR = 0;
+        long totalG = 0;
+        long totalB = 0;
+        int validSamples = 0;
+
+        // Sample a 4x4 grid across the texture
+        for (int sy = 0; sy < 4; sy++) {
+            for (int sx = 0; sx < 4; sx++) {
+                // Calculate sample position
+                int x = (width * sx) / 4 + width / 8;
+                int y = (height * sy) / 4 + height / 8;
+
+                // Clamp to bounds
+                if (x >= width) x = width - 1;
+                if (y >= height) y = height - 1;
+
+                // Read pixel color (ABGR format)
+                int rgba = pixels.getPixelRGBA(x, y);
+
+                // Extract color channels
+                int a = (rgba >> 24) & 0xFF;  // Alpha
+                int b = (rgba >> 16) & 0xFF;  // Blue
+                int g = (rgba >> 8) & 0xFF;   // Green
+                int r = rgba & 0xFF;          // Red
+
+                // Skip transparent pixels (they're not part of the block!)
+                if (a < 128) {
+                    continue;
+                }
+
+                // Add to total
+                totalR += r;
+                totalG += g;
+                totalB += b;
+                validSamples++;
+            }
+        }
+
+        // If no valid samples, return gray
+        if (validSamples == 0) {
+            return 0x888888;
+        }
+
+        // Calculate average color
+        int avgR = (int) (totalR / validSamples);
+        int avgG = (int) (totalG / validSamples);
+        int avgB = (int) (totalB / validSamples);
+
+        return (avgR << 16) | (avgG << 8) | avgB;
+    }
+
+    public static int brightenColor(int color, float factor) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+
+        // Apply brightness factor
+        r = Math.min(255, (int)(r * factor));
+        g = Math.min(255, (int)(g * factor));
+        b = Math.min(255, (int)(b * factor));
+
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Standard multiply for biome tinting
+     */
+    static int multiplyColors(int textureColor, int tintColor) {
+        int tr = (textureColor >> 16) & 0xFF;
+        int tg = (textureColor >> 8) & 0xFF;
+        int tb = textureColor & 0xFF;
+
+        int br = (tintColor >> 16) & 0xFF;
+        int bg = (tintColor >> 8) & 0xFF;
+        int bb = tintColor & 0xFF;
+
+        int r = (tr * br) / 255;
+        int g = (tg * bg) / 255;
+        int b = (tb * bb) / 255;
+
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private static final class Table {
+        final int[] colors;
+        final int[] baseColors;
+        final boolean[] tinted;
+        final long fingerprint;
+
+        Table(int[] colors, int[] baseColors, boolean[] tinted) {
+            this.colors = colors;
+            this.baseColors = baseColors;
+            this.tinted = tinted;
+            this.fingerprint = fingerprint(colors, baseColors, tinted);
+        }
+
+        private static long fingerprint(int[] colors, int[] baseColors, boolean[] tinted) {
+            long hash = colors.length * 0x9E3779B97F4A7C15L + SHADING_VERSION;
+            for (int i = 0; i < colors.length; i++) {
+                hash = hash * 0x9E3779B97F4A7C15L + colors[i];
+                hash = hash * 0x9E3779B97F4A7C15L + baseColors[i];
+                hash = hash * 0x9E3779B97F4A7C15L + (tinted[i] ? 1 : 0);
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.storage.TileCodec;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Turns surface columns into map pixels. Pure functions over {@link BlockColorTable} and the given
+ * {@link BlockColors}, with no game client or session state, so the offline renderer draws
+ * exactly what {@link TileManager} does without loading it.
+ */
+public final class ChunkRasterizer {
+
+    private static final ThreadLocal<ColumnTintGetter> TINT_GETTER = ThreadLocal.withInitial(ColumnTintGetter::new);
+    private static final int WATER_SHADE_STEP = 8;
+    private static final int WATER_SHADE_MAX_DEPTH = 12;
+
+    private ChunkRasterizer() {
+    }
+
+    /**
+     * This thread's tint getter, bounded to a world's build height
+     */
+    static ColumnTintGetter tintGetter(int minBuildHeight, int buildHeight) {
+        return TINT_GETTER.get().setBounds(minBuildHeight, buildHeight);
+    }
+
+    /**
+     * @param out 16x16 ABGR pixels, row by row
+     */
+    public static void renderChunk(ChunkSnapshot snapshot, int[] out, BlockColors blockColors) {
+        ColumnTintGetter tintGetter = tintGetter(snapshot.getMinBuildHeight(), snapshot.getBuildHeight());
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        int chunkWorldX = snapshot.getChunkX() << 4;
+        int chunkWorldZ = snapshot.getChunkZ() << 4;
+
+        for (int dz = 0; dz < 16; dz++) {
+            for (int dx = 0; dx < 16; dx++) {
+                int index = ChunkSnapshot.index(dx, dz);
+                int stateId = snapshot.getStateId(index);
+                Biome biome = BlockColorTable.isTinted(stateId) ? snapshot.getBiome(index) : null;
+
+                out[index] = columnColor(blockColors, tintGetter, pos, chunkWorldX + dx,
+                        snapshot.getHeight(index), chunkWorldZ + dz, stateId, biome, snapshot.getWaterDepth(index));
+            }
+        }
+    }
+
+    /**
+     * The one place a column's map color is decided, for fresh chunks and recolored layers alike
+     *
+     * @param biome only used for tinted states
+     * @param waterDepth water blocks from the surface down; deeper water is drawn darker
+     * @return ABGR color; tiles are stored ABGR, the layout NativeImage uploads as-is
+     */
+    static int columnColor(BlockColors blockColors, ColumnTintGetter tintGetter, BlockPos.MutableBlockPos pos,
+                           int worldX, int worldY, int worldZ, int stateId, Biome biome, int waterDepth) {
+        int color;
+        if (!BlockColorTable.isTinted(stateId)) {
+            color = BlockColorTable.getColor(stateId);
+        } else {
+            pos.set(worldX, worldY, worldZ);
+            color = getTintedColor(blockColors, tintGetter, biome, pos, stateId);
+        }
+        if (waterDepth > 1) {
+            color = shadeWater(color, waterDepth);
+        }
+        return TileCodec.swapRedBlue(color);
+    }
+
+    /**
+     * Darken an ARGB color by {@link #WATER_SHADE_STEP}/256 per block of water below the first,
+     * bottoming out at {@link #WATER_SHADE_MAX_DEPTH}
+     */
+    private static int shadeWater(int color, int waterDepth) {
+        int shade = 256 - (Math.min(waterDepth, WATER_SHADE_MAX_DEPTH) - 1) * WATER_SHADE_STEP;
+        int r = ((color >> 16) & 0xFF) * shade >> 8;
+        int g = ((color >> 8) & 0xFF) * shade >> 8;
+        int b = (color & 0xFF) * shade >> 8;
+        return (color & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Apply the biome tint Minecraft would use for this state, resolved against the captured biome
+     */
+    private static int getTintedColor(BlockColors blockColors, ColumnTintGetter tintGetter, Biome biome,
+                                      BlockPos pos, int stateId) {
+        try {
+            BlockState blockState = Block.stateById(stateId);
+            int tintColor = blockColors.getColor(blockState, tintGetter.set(biome, blockState), pos, 0);
+            return BlockColorTable.applyTint(BlockColorTable.getBaseColor(stateId), tintColor);
+        } catch (Exception e) {
+            return 0xFF888888;
+        }
+    }
+}
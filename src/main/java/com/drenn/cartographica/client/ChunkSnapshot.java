@@ -0,0 +1,198 @@
+package com.drenn.cartographica.client;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.QuartPos;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.FluidTags;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+/**
+ * Immutable copy of a chunk's surface, taken on the thread that owns the chunk.
+ * Render workers only ever read this, never the live level.
+ */
+public final class ChunkSnapshot {
+
+    public static final int COLUMNS = 16 * 16;
+    // Deeper water is not measured, to bound the work done on the owning thread
+    public static final int MAX_WATER_DEPTH = 64;
+
+    private final int chunkX;
+    private final int chunkZ;
+    private final int minBuildHeight;
+    private final int buildHeight;
+    private final int[] heights;
+    private final int[] stateIds;
+    private final int[] biomeIds;
+    private final byte[] waterDepths;
+    private final Registry<Biome> biomeRegistry;
+
+    private ChunkSnapshot(int chunkX, int chunkZ, int minBuildHeight, int buildHeight, int[] heights,
+                          int[] stateIds, int[] biomeIds, byte[] waterDepths, Registry<Biome> biomeRegistry) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.minBuildHeight = minBuildHeight;
+        this.buildHeight = buildHeight;
+        this.heights = heights;
+        this.stateIds = stateIds;
+        this.biomeIds = biomeIds;
+        this.waterDepths = waterDepths;
+        this.biomeRegistry = biomeRegistry;
+    }
+
+    /**
+     * Capture the surface column of every block in the chunk.
+     * Must run on the thread that owns the chunk (client or integrated server thread).
+     */
+    public static ChunkSnapshot capture(LevelChunk chunk) {
+        ChunkPos chunkPos = chunk.getPos();
+        int chunkWorldX = chunkPos.x << 4;
+        int chunkWorldZ = chunkPos.z << 4;
+        int minY = chunk.getMinBuildHeight();
+        int maxY = chunk.getMaxBuildHeight();
+
+        Registry<Biome> biomeRegistry = chunk.getLevel().registryAccess().registryOrThrow(Registries.BIOME);
+
+        int[] heights = new int[COLUMNS];
+        int[] stateIds = new int[COLUMNS];
+        int[] biomeIds = new int[COLUMNS];
+        byte[] waterDepths = new byte[COLUMNS];
+
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        for (int dz = 0; dz < 16; dz++) {
+            for (int dx = 0; dx < 16; dx++) {
+                int index = index(dx, dz);
+
+                int worldY = chunk.getHeight(Heightmap.Types.WORLD_SURFACE, dx, dz);
+                worldY = Math.max(minY, Math.min(worldY, maxY));
+
+                pos.set(chunkWorldX + dx, worldY, chunkWorldZ + dz);
+
+                BlockState surface = chunk.getBlockState(pos);
+                heights[index] = worldY;
+                stateIds[index] = Block.getId(surface);
+                if (surface.getFluidState().is(FluidTags.WATER)) {
+                    waterDepths[index] = (byte) measureWaterDepth(chunk, pos, minY);
+                    pos.setY(worldY);
+                }
+                biomeIds[index] = biomeRegistry.getId(chunk.getNoiseBiome(
+                        QuartPos.fromBlock(pos.getX()),
+                        QuartPos.fromBlock(worldY),
+                        QuartPos.fromBlock(pos.getZ())).value());
+            }
+        }
+
+        return new ChunkSnapshot(chunkPos.x, chunkPos.z, minY, chunk.getHeight(),
+                heights, stateIds, biomeIds, waterDepths, biomeRegistry);
+    }
+
+    /**
+     * A snapshot built from surface data that was not read from a live chunk, e.g. synthetic data.
+     * The arrays are indexed by {@link #index} and are not copied.
+     */
+    public static ChunkSnapshot of(int chunkX, int chunkZ, int minBuildHeight, int buildHeight, int[] heights,
+                                   int[] stateIds, int[] biomeIds, byte[] waterDepths, Registry<Biome> biomeRegistry) {
+        return new ChunkSnapshot(chunkX, chunkZ, minBuildHeight, buildHeight,
+                heights, stateIds, biomeIds, waterDepths, biomeRegistry);
+    }
+
+    /**
+     * Count water blocks from the surface down, up to {@link #MAX_WATER_DEPTH}
+     */
+    private static int measureWaterDepth(LevelChunk chunk, BlockPos.MutableBlockPos pos, int minY) {
+        int depth = 0;
+        while (depth < MAX_WATER_DEPTH && pos.getY() >= minY
+                && chunk.getBlockState(pos).getFluidState().is(FluidTags.WATER)) {
+            depth++;
+            pos.move(0, -1, 0);
+        }
+        return depth;
+    }
+
+    public static int index(int localX, int localZ) {
+        return (localZ << 4) | localX;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    public long getChunkKey() {
+        return ChunkPos.asLong(chunkX, chunkZ);
+    }
+
+    public int getMinBuildHeight() {
+        return minBuildHeight;
+    }
+
+    public int getBuildHeight() {
+        return buildHeight;
+    }
+
+    public int getHeight(int index) {
+        return heights[index];
+    }
+
+    public int getStateId(int index) {
+        return stateIds[index];
+    }
+
+    public int getBiomeId(int index) {
+        return biomeIds[index];
+    }
+
+    public Biome getBiome(int index) {
+        return biomeRegistry.byId(biomeIds[index]);
+    }
+
+    /**
+     * @return the biome's registry name, or an empty string if it has none
+     */
+    public String getBiomeName(int index) {
+        ResourceLocation name = biomeRegistry.getKey(getBiome(index));
+        return name == null ? "" : name.toString();
+    }
+
+    /**
+     * @return water blocks from the surface down, 0 if the surface is not water
+     */
+    public int getWaterDepth(int index) {
+        return waterDepths[index] & 0xFF;
+    }
+
+    /**
+     * 64-bit hash of the captured surface (heights, states, biomes and water depth). Two snapshots of
+     * an unchanged chunk hash the same, so it can be compared against the last drawn one.
+     */
+    public long contentHash() {
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < COLUMNS; i++) {
+            hash = mix(hash ^ heights[i]);
+            hash = mix(hash ^ stateIds[i]);
+            hash = mix(hash ^ biomeIds[i]);
+            hash = mix(hash ^ waterDepths[i]);
+        }
+        return hash;
+    }
+
+    private static long mix(long value) {
+        // Murmur3 finalizer
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
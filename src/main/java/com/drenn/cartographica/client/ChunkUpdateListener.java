@@ -24,8 +24,8 @@ public class ChunkUpdateListener {
         if (event.getChunk() instanceof LevelChunk levelChunk) {
             Minecraft mc = Minecraft.getInstance();
             if (mc.level != null) {
-                // Update this chunk in the tile (real-time!)
-                TileManager.updateChunkInTile(mc.level, levelChunk);
+                // Snapshot on the client thread; workers never touch the live level
+                TileManager.updateChunkInTile(ChunkSnapshot.capture(levelChunk));
             }
         }
     }
@@ -39,8 +39,8 @@ public class ChunkUpdateListener {
         Minecraft mc = Minecraft.getInstance();
 
         if (mc.level != null && mc.level.isClientSide()) {
-            // Update this chunk immediately
-            TileManager.updateChunkInTile(mc.level, chunk);
+            // Snapshot on the thread that owns this chunk, then render off-thread
+            TileManager.updateChunkInTile(ChunkSnapshot.capture(chunk));
             Cartographica.LOGGER.debug("Real-time chunk update: {}, {}", chunk.getPos().x, chunk.getPos().z);
         }
     }
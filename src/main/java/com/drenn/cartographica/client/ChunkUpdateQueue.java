@@ -0,0 +1,176 @@
+package com.drenn.cartographica.client;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-flight dedup in front of the render pool. A chunk that is queued but not yet
+ * started absorbs later updates (the newest snapshot wins), and the number of
+ * queued chunks is capped so teleports and rejoins cannot grow the queue without bound.
+ * A chunk renders on one worker at a time: an update arriving while it renders waits
+ * and runs afterwards, so an older snapshot can never land on top of a newer one.
+ * Chunks dropped because the queue was full are remembered for {@link #takeDropped}.
+ */
+public class ChunkUpdateQueue {
+
+    public interface Renderer {
+        void render(ChunkSnapshot snapshot);
+    }
+
+    private final Long2ObjectMap<ChunkSnapshot> pending = new Long2ObjectOpenHashMap<>();
+    // Guarded by pending
+    private final LongSet running = new LongOpenHashSet();
+    private final LongSet droppedKeys = new LongOpenHashSet();
+    private final Executor executor;
+    private final Renderer renderer;
+
+    private volatile int maxPending;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+
+    public ChunkUpdateQueue(Executor executor, Renderer renderer, int maxPending) {
+        this.executor = executor;
+        this.renderer = renderer;
+        this.maxPending = maxPending;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Queue a chunk for rendering.
+     *
+     * @return false if the update was dropped because the queue is full or the pool is gone
+     */
+    public boolean submit(ChunkSnapshot snapshot) {
+        long key = snapshot.getChunkKey();
+        submitted.incrementAndGet();
+
+        synchronized (pending) {
+            if (pending.containsKey(key)) {
+                pending.put(key, snapshot);
+                merged.incrementAndGet();
+                return true;
+            }
+
+            if (pending.size() >= maxPending) {
+                droppedKeys.add(key);
+                dropped.incrementAndGet();
+                return false;
+            }
+
+            pending.put(key, snapshot);
+            droppedKeys.remove(key);
+            if (running.contains(key)) {
+                // Picked up when the render in progress finishes
+                return true;
+            }
+        }
+
+        return schedule(key);
+    }
+
+    private boolean schedule(long key) {
+        try {
+            executor.execute(() -> run(key));
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Pool replaced or shutting down; nothing would ever pick this chunk up
+            synchronized (pending) {
+                pending.remove(key);
+            }
+            dropped.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void run(long key) {
+        ChunkSnapshot snapshot;
+        synchronized (pending) {
+            if (running.contains(key)) {
+                return;
+            }
+            // Removing marks it started; updates arriving from now on wait for this render
+            snapshot = pending.remove(key);
+            if (snapshot == null) {
+                return;
+            }
+            running.add(key);
+        }
+
+        boolean again;
+        try {
+            renderer.render(snapshot);
+            rendered.incrementAndGet();
+        } finally {
+            synchronized (pending) {
+                running.remove(key);
+                again = pending.containsKey(key);
+            }
+        }
+        if (again) {
+            schedule(key);
+        }
+    }
+
+    /**
+     * Take chunks dropped while the queue was full, once it has room for them again
+     *
+     * @param max most keys to take
+     * @return chunk keys to capture and submit again, possibly empty
+     */
+    public LongList takeDropped(int max) {
+        LongList keys = new LongArrayList();
+        synchronized (pending) {
+            int room = Math.min(max, maxPending / 2 - pending.size());
+            LongIterator iterator = droppedKeys.iterator();
+            while (keys.size() < room && iterator.hasNext()) {
+                keys.add(iterator.nextLong());
+                iterator.remove();
+            }
+        }
+        return keys;
+    }
+
+    public void clear() {
+        synchronized (pending) {
+            pending.clear();
+            droppedKeys.clear();
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getMerged() {
+        return merged.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getRendered() {
+        return rendered.get();
+    }
+}
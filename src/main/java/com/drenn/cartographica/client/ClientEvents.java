@@ -3,23 +3,31 @@ package com.drenn.cartographica.client;
 import com.drenn.cartographica.Cartographica;
 import com.drenn.cartographica.config.CartographicaConfig;
 import net.minecraft.client.Minecraft;
+import net.minecraft.network.chat.Component;
 import net.neoforged.api.distmarker.Dist;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.client.event.ClientPlayerNetworkEvent;
+import net.neoforged.neoforge.client.event.RenderFrameEvent;
+import net.neoforged.neoforge.event.GameShuttingDownEvent;
 import net.neoforged.neoforge.event.entity.EntityJoinLevelEvent;
 import net.neoforged.neoforge.event.tick.PlayerTickEvent;
 
-import java.util.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 @EventBusSubscriber(modid = Cartographica.MOD_ID, value = Dist.CLIENT)
 public class ClientEvents {
 
-    private static final Queue<TileToGenerate> tileGenerationQueue = new PriorityQueue<>(
-            Comparator.comparingDouble(t -> t.distanceFromPlayer)
-    );
-    private static final Set<String> tilesInQueue = new HashSet<>();
+    // Missing tiles within this many tiles of the player are generated
+    private static final int GENERATION_RADIUS = 2;
+
+    private static final TileGenerationScheduler generationScheduler = new TileGenerationScheduler((tileX, tileZ) -> {
+        Minecraft mc = Minecraft.getInstance();
+        return mc.level == null ? CompletableFuture.completedFuture(null) : TileManager.generateAndSaveTile(mc.level, tileX, tileZ);
+    });
 
-    private static int ticksSinceLastGeneration = 0;
     private static boolean worldFullyLoaded = false;
     private static int worldLoadTicks = 0;
 
@@ -39,10 +47,16 @@ public class ClientEvents {
 
                 String dimension = mc.level.dimension().location().getPath();
 
+                BlockColorTable.ensureBuilt();
+                TileRecolorJob.stop();
                 TileManager.initialize(worldName, dimension);
+                TileRecolorJob.start(TileManager.getTileDirectory());
+                TileTextureService.clear();
+                MinimapRenderer.invalidateComposite();
+                TileTextureService.setCapacity(CartographicaConfig.TILE_TEXTURE_POOL_SIZE.get());
+                TilePrefetcher.reset();
 
-                tileGenerationQueue.clear();
-                tilesInQueue.clear();
+                generationScheduler.clear();
                 worldFullyLoaded = false;
                 worldLoadTicks = 0;
                 lastPlayerTileX = Integer.MIN_VALUE;
@@ -53,6 +67,23 @@ public class ClientEvents {
         }
     }
 
+    @SubscribeEvent
+    public static void onLoggingOut(ClientPlayerNetworkEvent.LoggingOut event) {
+        // Persist everything we have before the world goes away
+        TileRecolorJob.stop();
+        TileManager.unload();
+        TileTextureService.clear();
+        MinimapRenderer.invalidateComposite();
+        TilePrefetcher.reset();
+        generationScheduler.clear();
+    }
+
+    @SubscribeEvent
+    public static void onGameShuttingDown(GameShuttingDownEvent event) {
+        TileRecolorJob.stop();
+        TileManager.shutdown();
+    }
+
     @SubscribeEvent
     public static void onPlayerTick(PlayerTickEvent.Post event) {
         if (!event.getEntity().level().isClientSide()) {
@@ -102,6 +133,10 @@ public class ClientEvents {
             Cartographica.LOGGER.info("Minimap: {}", !enabled ? "enabled" : "disabled");
         }
 
+        if (KeyBindings.DUMP_METRICS.consumeClick()) {
+            dumpMetrics(mc);
+        }
+
         // Check if player moved to new tile
         int playerBlockX = (int) mc.player.getX();
         int playerBlockZ = (int) mc.player.getZ();
@@ -111,17 +146,45 @@ public class ClientEvents {
         if (playerTileX != lastPlayerTileX || playerTileZ != lastPlayerTileZ) {
             lastPlayerTileX = playerTileX;
             lastPlayerTileZ = playerTileZ;
+            TileManager.setPlayerTile(playerTileX, playerTileZ);
+            TileTextureService.setFocus(playerTileX, playerTileZ);
             queueTilesAroundPlayer(mc);
         }
 
-        // Generate tiles
-        ticksSinceLastGeneration++;
-        if (ticksSinceLastGeneration >= 20 && !tileGenerationQueue.isEmpty()) {
-            generateNextTileFromQueue(mc);
-            ticksSinceLastGeneration = 0;
+        // Warm tiles along the path ahead of a fast-moving player
+        TilePrefetcher.tick(mc.player);
+
+        // Generate tiles, nearest first; ones the player has left behind are dropped
+        generationScheduler.tick(playerTileX, playerTileZ, GENERATION_RADIUS + 1,
+                CartographicaConfig.TILE_GENERATION_RATE.get(),
+                CartographicaConfig.TILE_GENERATION_CONCURRENCY.get());
+        TileManager.tickTileCaptures(mc.level);
+        TileManager.retryDroppedChunks(mc.level);
+
+        // Bring stored tiles up to date after the block colors changed
+        TileRecolorJob.tick(playerTileX, playerTileZ);
+    }
+
+    @SubscribeEvent
+    public static void onRenderFrame(RenderFrameEvent.Post event) {
+        MetricsPanel.endFrame();
+    }
+
+    private static void dumpMetrics(Minecraft mc) {
+        try {
+            Path file = MetricsPanel.dump(mc.gameDirectory.toPath().resolve("cartographica/metrics"));
+            Cartographica.LOGGER.info("Wrote map metrics to {}", file);
+            mc.player.displayClientMessage(Component.translatable("message.cartographica.metrics_dumped", file.toString()), false);
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to write map metrics", e);
+            mc.player.displayClientMessage(Component.translatable("message.cartographica.metrics_dump_failed"), false);
         }
     }
 
+    public static TileGenerationScheduler getGenerationScheduler() {
+        return generationScheduler;
+    }
+
     private static void queueTilesAroundPlayer(Minecraft mc) {
         if (mc.player == null || mc.level == null) {
             return;
@@ -133,9 +196,7 @@ public class ClientEvents {
         int playerTileZ = TileManager.getTileZ(playerBlockZ);
 
         // Generate in spiral (circular) pattern around player
-        int radius = 2;
-
-        for (int ring = 0; ring <= radius; ring++) {
+        for (int ring = 0; ring <= GENERATION_RADIUS; ring++) {
             for (int dx = -ring; dx <= ring; dx++) {
                 for (int dz = -ring; dz <= ring; dz++) {
                     // Only this ring
@@ -146,44 +207,16 @@ public class ClientEvents {
                     int tileX = playerTileX + dx;
                     int tileZ = playerTileZ + dz;
 
-                    String key = tileX + "_" + tileZ;
-
-                    if (!tilesInQueue.contains(key) && !TileManager.tileExists(tileX, tileZ)) {
-                        double distance = Math.sqrt(dx * dx + dz * dz);
-                        tileGenerationQueue.add(new TileToGenerate(tileX, tileZ, distance));
-                        tilesInQueue.add(key);
+                    if (!TileManager.tileExists(tileX, tileZ)) {
+                        generationScheduler.enqueue(tileX, tileZ);
                     }
                 }
             }
         }
 
-        if (tileGenerationQueue.size() > 0) {
+        if (generationScheduler.getQueueDepth() > 0) {
             Cartographica.LOGGER.info("Tiles queued: {}, Player at {},{}",
-                    tileGenerationQueue.size(), playerTileX, playerTileZ);
-        }
-    }
-
-    private static void generateNextTileFromQueue(Minecraft mc) {
-        if (mc.level == null) {
-            return;
-        }
-
-        TileToGenerate tile = tileGenerationQueue.poll();
-        if (tile != null) {
-            tilesInQueue.remove(tile.tileX + "_" + tile.tileZ);
-            TileManager.generateAndSaveTile(mc.level, tile.tileX, tile.tileZ);
-        }
-    }
-
-    private static class TileToGenerate {
-        final int tileX;
-        final int tileZ;
-        final double distanceFromPlayer;
-
-        TileToGenerate(int tileX, int tileZ, double distance) {
-            this.tileX = tileX;
-            this.tileZ = tileZ;
-            this.distanceFromPlayer = distance;
+                    generationScheduler.getQueueDepth(), playerTileX, playerTileZ);
         }
     }
 }
\ No newline at end of file
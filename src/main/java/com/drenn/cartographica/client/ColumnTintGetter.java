@@ -0,0 +1,119 @@
+package com.drenn.cartographica.client;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.BlockAndTintGetter;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LightChunk;
+import net.minecraft.world.level.chunk.LightChunkGetter;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Stand-in level for biome tint lookups on a single captured column.
+ * Lets workers call BlockColors without touching the live ClientLevel.
+ * One instance per thread; {@link #set} before each lookup.
+ */
+public class ColumnTintGetter implements BlockAndTintGetter {
+
+    // Neither block nor sky light; lookups go through the brightness overrides below instead
+    private static final LevelLightEngine NO_LIGHT = new LevelLightEngine(new LightChunkGetter() {
+        @Nullable
+        @Override
+        public LightChunk getChunkForLighting(int chunkX, int chunkZ) {
+            return null;
+        }
+
+        @Override
+        public BlockGetter getLevel() {
+            return EmptyBlockGetter.INSTANCE;
+        }
+    }, false, false);
+
+    private Biome biome;
+    private BlockState blockState = Blocks.AIR.defaultBlockState();
+    private int minBuildHeight;
+    private int height;
+
+    public ColumnTintGetter set(Biome biome, BlockState blockState) {
+        this.biome = biome;
+        this.blockState = blockState;
+        return this;
+    }
+
+    public ColumnTintGetter setBounds(int minBuildHeight, int height) {
+        this.minBuildHeight = minBuildHeight;
+        this.height = height;
+        return this;
+    }
+
+    @Override
+    public int getBlockTint(BlockPos pos, ColorResolver colorResolver) {
+        if (biome == null) {
+            return -1;
+        }
+        return colorResolver.getColor(biome, pos.getX(), pos.getZ());
+    }
+
+    @Override
+    public float getShade(Direction direction, boolean shade) {
+        return 1.0f;
+    }
+
+    @Override
+    public LevelLightEngine getLightEngine() {
+        return NO_LIGHT;
+    }
+
+    /**
+     * Map colors are drawn in full daylight
+     */
+    @Override
+    public int getBrightness(LightLayer lightLayer, BlockPos pos) {
+        return 15;
+    }
+
+    @Override
+    public int getRawBrightness(BlockPos pos, int amount) {
+        return Math.max(0, 15 - amount);
+    }
+
+    @Override
+    public boolean canSeeSky(BlockPos pos) {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return null;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        return blockState;
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return blockState.getFluidState();
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return minBuildHeight;
+    }
+}
@@ -0,0 +1,115 @@
+package com.drenn.cartographica.client;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * Records which 16x16 chunk areas of a tile changed since its texture was last uploaded.
+ * {@link TileTextureService} holds the one tracker, shared by every map view, and watches
+ * only the tiles it has textures for, so tiles nobody is showing cost nothing.
+ */
+public class DirtyChunkTracker implements TileManager.TileChangeListener {
+
+    public static final int CHUNKS_PER_TILE = TileManager.TILE_SIZE / 16;
+    private static final int WORDS = CHUNKS_PER_TILE * CHUNKS_PER_TILE / 64;
+
+    public interface RunConsumer {
+        /**
+         * A horizontal run of dirty chunks, in chunk coordinates within the tile
+         */
+        void accept(int chunkX, int chunkZ, int length);
+    }
+
+    private final Long2ObjectMap<long[]> watched = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Start tracking a tile, forgetting any earlier changes.
+     * Call before copying the tile into a texture, so changes made during the copy are not lost.
+     */
+    public void watch(long tileKey) {
+        synchronized (watched) {
+            watched.put(tileKey, new long[WORDS]);
+        }
+    }
+
+    public void unwatch(long tileKey) {
+        synchronized (watched) {
+            watched.remove(tileKey);
+        }
+    }
+
+    public void clear() {
+        synchronized (watched) {
+            watched.clear();
+        }
+    }
+
+    @Override
+    public void onChunkChanged(int tileX, int tileZ, int chunkX, int chunkZ) {
+        int bit = chunkZ * CHUNKS_PER_TILE + chunkX;
+        synchronized (watched) {
+            long[] dirty = watched.get(TileManager.tileKey(tileX, tileZ));
+            if (dirty != null) {
+                dirty[bit >> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * Take the dirty set of a watched tile and reset it
+     *
+     * @return the dirty chunk bits, or null if nothing changed
+     */
+    public long[] take(long tileKey) {
+        synchronized (watched) {
+            long[] dirty = watched.get(tileKey);
+            if (dirty == null || isEmpty(dirty)) {
+                return null;
+            }
+            watched.put(tileKey, new long[WORDS]);
+            return dirty;
+        }
+    }
+
+    /**
+     * Put back bits returned by {@link #take} that could not be uploaded yet
+     */
+    public void restore(long tileKey, long[] bits) {
+        synchronized (watched) {
+            long[] dirty = watched.get(tileKey);
+            if (dirty != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    dirty[i] |= bits[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit dirty chunks merged into horizontal runs, one rectangle per run
+     */
+    public static void forEachRun(long[] dirty, RunConsumer consumer) {
+        for (int chunkZ = 0; chunkZ < CHUNKS_PER_TILE; chunkZ++) {
+            // Two rows of 32 chunks per word
+            int row = (int) (dirty[chunkZ >> 1] >>> ((chunkZ & 1) * 32));
+
+            while (row != 0) {
+                int start = Integer.numberOfTrailingZeros(row);
+                int length = Integer.numberOfTrailingZeros(~(row >>> start));
+                consumer.accept(start, chunkZ, length);
+
+                int mask = length == 32 ? -1 : ((1 << length) - 1) << start;
+                row &= ~mask;
+            }
+        }
+    }
+
+    private static boolean isEmpty(long[] dirty) {
+        for (long word : dirty) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,19 +1,16 @@
 package com.drenn.cartographica.client;
 
 import com.drenn.cartographica.Cartographica;
-import com.mojang.blaze3d.platform.NativeImage;
+import com.drenn.cartographica.storage.TileLodPyramid;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.client.gui.screens.Screen;
-import net.minecraft.client.renderer.texture.DynamicTexture;
 import net.minecraft.network.chat.Component;
-import net.minecraft.resources.ResourceLocation;
-
-import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
 
 public class FullscreenMapScreen extends Screen {
 
+    private static final double MIN_ZOOM = 1.0 / 32.0;
+    private static final double MAX_ZOOM = 4.0;
+
     // Camera in TILE coordinates (not world blocks!)
     private double cameraTileX;
     private double cameraTileZ;
@@ -23,8 +20,10 @@ public class FullscreenMapScreen extends Screen {
     private double lastMouseX;
     private double lastMouseZ;
 
-    private final Map<String, TileTextureData> tileTextures = new HashMap<>();
-    private int nextTextureId = 0;
+    // Shared with the minimap, so tiles it already uploaded show up immediately
+    private final TileTextureService.View textures = TileTextureService.createView();
+    private int currentLevel = 0;
+    private int tilesDrawn = 0;
 
     public FullscreenMapScreen() {
         super(Component.literal("Cartographica Map"));
@@ -58,16 +57,22 @@ public class FullscreenMapScreen extends Screen {
             return;
         }
 
+        int level = levelForZoom(zoom);
+        currentLevel = level;
+
+        // A level tile covers span x span base tiles
+        int span = 1 << level;
+
         // How many screen pixels does one tile occupy?
-        double tileScreenSize = TileManager.TILE_SIZE * zoom;
+        double tileScreenSize = TileManager.TILE_SIZE * span * zoom;
 
         // How many tiles fit on screen?
         int tilesVisibleWidth = (int) Math.ceil(this.width / tileScreenSize) + 2;
         int tilesVisibleHeight = (int) Math.ceil(this.height / tileScreenSize) + 2;
 
         // Center tile (what the camera is looking at)
-        int centerTileX = (int) Math.floor(cameraTileX);
-        int centerTileZ = (int) Math.floor(cameraTileZ);
+        int centerTileX = (int) Math.floor(cameraTileX / span);
+        int centerTileZ = (int) Math.floor(cameraTileZ / span);
 
         // Calculate range of tiles to draw
         int minTileX = centerTileX - tilesVisibleWidth / 2 - 1;
@@ -75,46 +80,67 @@ public class FullscreenMapScreen extends Screen {
         int minTileZ = centerTileZ - tilesVisibleHeight / 2 - 1;
         int maxTileZ = centerTileZ + tilesVisibleHeight / 2 + 1;
 
-        // Draw grid of tiles
+        // Draw grid of tiles; tiles of other levels are released at the end of the frame
+        tilesDrawn = 0;
+        textures.beginFrame();
         for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
             for (int tileZ = minTileZ; tileZ <= maxTileZ; tileZ++) {
-                renderSingleTile(graphics, tileX, tileZ);
+                renderSingleTile(graphics, level, tileX, tileZ);
             }
         }
+        textures.endFrame();
     }
 
-    private void renderSingleTile(GuiGraphics graphics, int tileX, int tileZ) {
-        TileTextureData textureData = getTileTexture(tileX, tileZ);
-        if (textureData == null) {
-            return;
-        }
+    /**
+     * Finest level whose pixels are still at least one screen pixel wide,
+     * so textures are never uploaded at more detail than can be shown
+     */
+    private static int levelForZoom(double zoom) {
+        int level = (int) Math.floor(Math.log(1.0 / zoom) / Math.log(2.0));
+        return Math.max(0, Math.min(TileLodPyramid.MAX_LEVEL, level));
+    }
+
+    private void renderSingleTile(GuiGraphics graphics, int level, int tileX, int tileZ) {
+        int span = 1 << level;
 
         // Calculate tile position in TILE GRID coordinates
-        double relativeTileX = tileX - cameraTileX;
-        double relativeTileZ = tileZ - cameraTileZ;
+        double relativeTileX = tileX * span - cameraTileX;
+        double relativeTileZ = tileZ * span - cameraTileZ;
 
         // Convert to screen pixels
-        double tileScreenSize = TileManager.TILE_SIZE * zoom;
+        double baseTileScreenSize = TileManager.TILE_SIZE * zoom;
+        double tileScreenSize = baseTileScreenSize * span;
 
-        int screenX = (int) (this.width / 2 + relativeTileX * tileScreenSize);
-        int screenY = (int) (this.height / 2 + relativeTileZ * tileScreenSize);
+        int screenX = (int) (this.width / 2 + relativeTileX * baseTileScreenSize);
+        int screenY = (int) (this.height / 2 + relativeTileZ * baseTileScreenSize);
         int screenWidth = (int) tileScreenSize;
         int screenHeight = (int) tileScreenSize;
 
+        // Off-screen tiles would only hold textures other views could use
+        if (screenX + screenWidth < 0 || screenX > this.width || screenY + screenHeight < 0 || screenY > this.height) {
+            return;
+        }
+
+        TileTextureService.Region texture = textures.acquire(level, tileX, tileZ);
+        if (texture == null) {
+            return;
+        }
+        tilesDrawn++;
+
         // Use the PoseStack directly for proper texture rendering
         graphics.pose().pushPose();
 
         // Draw using the proper blit method with FLOAT parameters for scaling
         graphics.blit(
-                textureData.location,     // Texture
+                texture.location,         // Texture
                 screenX,                  // Screen X
                 screenY,                  // Screen Y
                 screenWidth,              // Screen Width
                 screenHeight,             // Screen Height
-                0.0F,                     // U (texture coordinate)
-                0.0F,                     // V (texture coordinate)
-                TileManager.TILE_SIZE,    // Texture region width
-                TileManager.TILE_SIZE,    // Texture region height
+                texture.u,                // U (texture coordinate)
+                texture.v,                // V (texture coordinate)
+                texture.size,             // Texture region width (smaller while a coarser tile stands in)
+                texture.size,             // Texture region height
                 TileManager.TILE_SIZE,    // Full texture width
                 TileManager.TILE_SIZE     // Full texture height
         );
@@ -122,46 +148,6 @@ public class FullscreenMapScreen extends Screen {
         graphics.pose().popPose();
     }
 
-    private TileTextureData getTileTexture(int tileX, int tileZ) {
-        String key = tileX + "_" + tileZ;
-
-        if (tileTextures.containsKey(key)) {
-            return tileTextures.get(key);
-        }
-
-        BufferedImage tileImage = TileManager.loadTile(tileX, tileZ);
-        if (tileImage == null) {
-            return null;
-        }
-
-        NativeImage nativeImage = new NativeImage(TileManager.TILE_SIZE, TileManager.TILE_SIZE, false);
-
-        for (int x = 0; x < TileManager.TILE_SIZE; x++) {
-            for (int y = 0; y < TileManager.TILE_SIZE; y++) {
-                int rgb = tileImage.getRGB(x, y);
-                int a = (rgb >> 24) & 0xFF;
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int abgr = (a << 24) | (b << 16) | (g << 8) | r;
-                nativeImage.setPixelRGBA(x, y, abgr);
-            }
-        }
-
-        ResourceLocation location = ResourceLocation.fromNamespaceAndPath(
-                Cartographica.MOD_ID,
-                "tile_" + tileX + "_" + tileZ
-        );
-
-        DynamicTexture texture = new DynamicTexture(nativeImage);
-        minecraft.getTextureManager().register(location, texture);
-
-        TileTextureData data = new TileTextureData(location, texture, tileX, tileZ);
-        tileTextures.put(key, data);
-
-        return data;
-    }
-
     private void renderPlayerMarker(GuiGraphics graphics) {
         if (minecraft == null || minecraft.player == null) {
             return;
@@ -208,11 +194,11 @@ public class FullscreenMapScreen extends Screen {
                 10, 10, 0xFFFFFFFF, true);
 
         graphics.drawString(minecraft.font,
-                String.format("Zoom: %.2fx", zoom),
+                String.format("Zoom: %.2fx (detail 1:%d)", zoom, 1 << currentLevel),
                 10, 22, 0xFFFFFFFF, true);
 
         graphics.drawString(minecraft.font,
-                String.format("Tiles Loaded: %d", tileTextures.size()),
+                String.format("Tiles Loaded: %d", tilesDrawn),
                 10, 34, 0xFFFFFFFF, true);
 
         graphics.drawString(minecraft.font,
@@ -265,8 +251,9 @@ public class FullscreenMapScreen extends Screen {
 
     @Override
     public boolean mouseScrolled(double mouseX, double mouseY, double scrollX, double scrollY) {
-        double zoomChange = scrollY * 0.1;
-        zoom = Math.max(0.25, Math.min(4.0, zoom + zoomChange));
+        // Multiplicative steps feel the same at every scale, from 4x down to 1/32x
+        double zoomFactor = Math.pow(1.1, scrollY);
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * zoomFactor));
         return true;
     }
 
@@ -286,28 +273,8 @@ public class FullscreenMapScreen extends Screen {
 
     @Override
     public void removed() {
-        for (TileTextureData data : tileTextures.values()) {
-            try {
-                data.texture.close();
-            } catch (Exception e) {
-                // Ignore
-            }
-        }
-        tileTextures.clear();
+        // The textures stay cached, so reopening the map is instant
+        textures.releaseAll();
         super.removed();
     }
-
-    private static class TileTextureData {
-        final ResourceLocation location;
-        final DynamicTexture texture;
-        final int tileX;
-        final int tileZ;
-
-        TileTextureData(ResourceLocation location, DynamicTexture texture, int tileX, int tileZ) {
-            this.location = location;
-            this.texture = texture;
-            this.tileX = tileX;
-            this.tileZ = tileZ;
-        }
-    }
-}
\ No newline at end of file
+}
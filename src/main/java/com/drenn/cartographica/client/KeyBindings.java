@@ -42,11 +42,19 @@ public class KeyBindings {
             CATEGORY
     );
 
+    public static final KeyMapping DUMP_METRICS = new KeyMapping(
+            "key.cartographica.dump_metrics",
+            InputConstants.Type.KEYSYM,
+            InputConstants.UNKNOWN.getValue(), // unbound
+            CATEGORY
+    );
+
     @SubscribeEvent
     public static void registerKeyMappings(RegisterKeyMappingsEvent event) {
         event.register(OPEN_MAP);
         event.register(ZOOM_IN);
         event.register(ZOOM_OUT);
         event.register(TOGGLE_MINIMAP);
+        event.register(DUMP_METRICS);
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.drenn.cartographica.client;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.commands.arguments.blocks.BlockStateParser;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Stable names for block states and biomes in stored tile layers, so the layers survive
+ * registry id changes between sessions. Block state names are cached in both directions.
+ * Thread-safe.
+ */
+public final class LayerNames {
+
+    private static final Int2ObjectMap<String> stateNames = new Int2ObjectOpenHashMap<>();
+    private static final Object2IntMap<String> stateIds = new Object2IntOpenHashMap<>();
+
+    static {
+        stateIds.defaultReturnValue(Integer.MIN_VALUE);
+    }
+
+    private LayerNames() {
+    }
+
+    /**
+     * @return e.g. "minecraft:grass_block[snowy=false]"
+     */
+    public static String stateName(int stateId) {
+        synchronized (stateNames) {
+            String name = stateNames.get(stateId);
+            if (name == null) {
+                name = BlockStateParser.serialize(Block.stateById(stateId));
+                stateNames.put(stateId, name);
+            }
+            return name;
+        }
+    }
+
+    /**
+     * @return the state id for a stored name, or -1 if no such state exists any more
+     */
+    public static int stateId(String name) {
+        synchronized (stateIds) {
+            int id = stateIds.getInt(name);
+            if (id == Integer.MIN_VALUE) {
+                id = parseState(name);
+                stateIds.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    private static int parseState(String name) {
+        try {
+            return Block.getId(BlockStateParser.parseForBlock(BuiltInRegistries.BLOCK.asLookup(), name, false).blockState());
+        } catch (CommandSyntaxException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the biome for a stored name, or null if it does not exist in this world
+     */
+    public static Biome biome(Registry<Biome> biomes, String name) {
+        ResourceLocation location = ResourceLocation.tryParse(name);
+        return location == null ? null : biomes.get(location);
+    }
+}
@@ -0,0 +1,85 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.metrics.PipelineMetrics;
+import net.minecraft.client.gui.Font;
+import net.minecraft.client.gui.GuiGraphics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Publishes the map pipeline's queues and caches as {@link PipelineMetrics} gauges, draws
+ * the debug panel and writes metric dumps.
+ */
+public final class MetricsPanel {
+
+    private static final DateTimeFormatter DUMP_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int LINE_HEIGHT = 10;
+    private static final int TEXT_COLOR = 0xFFB0B0B0;
+
+    // Metrics shown in the panel, in order; the rest only appear in dumps
+    private static final List<String> PANEL_METRICS = List.of(
+            "render.chunk", "tile.decode", "tile.encode", "texture.uploads.frame",
+            "cache.hitRatio", "queue.chunkUpdates", "queue.generation", "writer.backlog");
+
+    private static int frameUploads;
+
+    static {
+        PipelineMetrics.gauge("cache.hitRatio", () -> TileManager.getTileCache().getHitRatio());
+        PipelineMetrics.gauge("cache.usedMB", () -> TileManager.getTileCache().getUsedBytes() / (1024.0 * 1024.0));
+        PipelineMetrics.gauge("queue.chunkUpdates", () -> TileManager.getChunkUpdateQueue().getPendingCount());
+        PipelineMetrics.gauge("queue.generation", () -> ClientEvents.getGenerationScheduler().getQueueDepth());
+        PipelineMetrics.gauge("generation.inFlight", () -> ClientEvents.getGenerationScheduler().getInFlight());
+        PipelineMetrics.gauge("generation.avgWaitMs", () -> ClientEvents.getGenerationScheduler().getAverageWaitMs());
+        PipelineMetrics.gauge("writer.backlog", () -> TileManager.getTileWriter().getBacklog());
+        PipelineMetrics.gauge("chunks.skippedUnchanged", TileManager::getUnchangedChunksSkipped);
+        PipelineMetrics.gauge("textures.occupied", TileTextureService::getOccupied);
+        PipelineMetrics.gauge("prefetch.hitRate", TilePrefetcher::getHitRate);
+    }
+
+    private MetricsPanel() {
+    }
+
+    /**
+     * Count a texture upload toward the current frame
+     */
+    public static void onTextureUpload() {
+        PipelineMetrics.TEXTURE_UPLOADS.increment();
+        frameUploads++;
+    }
+
+    /**
+     * Record the current frame's upload count; called once per rendered frame
+     */
+    public static void endFrame() {
+        PipelineMetrics.TEXTURE_UPLOADS_PER_FRAME.record(frameUploads);
+        frameUploads = 0;
+    }
+
+    /**
+     * Draw the panel's metrics starting at the given position
+     */
+    public static void render(GuiGraphics graphics, Font font, int x, int y) {
+        for (String name : PANEL_METRICS) {
+            String value = PipelineMetrics.describe(name);
+            if (value != null) {
+                graphics.drawString(font, name + ": " + value, x, y, TEXT_COLOR, true);
+                y += LINE_HEIGHT;
+            }
+        }
+    }
+
+    /**
+     * Write all metrics to a timestamped file in the given directory
+     *
+     * @return the written file
+     */
+    public static Path dump(Path directory) throws IOException {
+        Path file = directory.resolve("metrics-" + LocalDateTime.now().format(DUMP_NAME) + ".txt");
+        PipelineMetrics.dump(file);
+        return file;
+    }
+}
@@ -0,0 +1,151 @@
+package com.drenn.cartographica.client;
+
+import com.mojang.blaze3d.pipeline.TextureTarget;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.BufferUploader;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.Tesselator;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.blaze3d.vertex.VertexSorting;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.client.renderer.GameRenderer;
+import org.joml.Matrix4f;
+
+import java.util.function.Predicate;
+
+/**
+ * Offscreen copy of what the minimap draws from tiles (background, tiles, border), so a
+ * frame where nothing changed is one textured quad. It is redrawn when the view moves by a
+ * map pixel or is configured differently, when a visible tile changes, and a few times a
+ * second while some visible tile is still loading. Render thread only, except for the
+ * tile change listener.
+ */
+public final class MinimapComposite {
+
+    // How often a composite with loading tiles is redrawn to pick them up
+    private static final long INCOMPLETE_REDRAW_MS = 250;
+
+    /**
+     * Everything the composite's pixels depend on, besides tile contents
+     */
+    public record ViewKey(long mapX, long mapZ, double zoom, int size, int borderWidth, int borderColor, double guiScale) {
+    }
+
+    private TextureTarget target;
+    private ViewKey drawnKey;
+    private boolean complete;
+    private long drawnAt;
+
+    private volatile boolean tilesChanged;
+    private volatile int minTileX;
+    private volatile int minTileZ;
+    private volatile int maxTileX = -1;
+    private volatile int maxTileZ = -1;
+
+    public MinimapComposite() {
+        TileManager.addChangeListener((tileX, tileZ, chunkX, chunkZ) -> {
+            if (tileX >= minTileX && tileX <= maxTileX && tileZ >= minTileZ && tileZ <= maxTileZ) {
+                tilesChanged = true;
+            }
+        });
+    }
+
+    /**
+     * Tiles the current composite shows; changes to them trigger a redraw
+     */
+    public void setVisibleTiles(int minTileX, int minTileZ, int maxTileX, int maxTileZ) {
+        this.minTileX = minTileX;
+        this.minTileZ = minTileZ;
+        this.maxTileX = maxTileX;
+        this.maxTileZ = maxTileZ;
+    }
+
+    /**
+     * Drop the composite, so the next frame draws it from scratch, e.g. after the textures were
+     * cleared on a world or dimension change or the block colors changed
+     */
+    public void invalidate() {
+        if (target != null) {
+            target.destroyBuffers();
+            target = null;
+        }
+        drawnKey = null;
+        complete = false;
+    }
+
+    /**
+     * Draw the composite at the given GUI position, redrawing it first if it is stale
+     *
+     * @param outerSize width and height in GUI units
+     * @param painter   draws the composite in its own GUI units, origin top left;
+     *                  returns whether every visible tile was drawn in full
+     */
+    public void draw(GuiGraphics graphics, int x, int y, int outerSize, ViewKey key, Predicate<GuiGraphics> painter) {
+        long now = System.currentTimeMillis();
+        if (target == null || !key.equals(drawnKey) || tilesChanged
+                || (!complete && now - drawnAt >= INCOMPLETE_REDRAW_MS)) {
+            // Anything the HUD has batched must reach the screen, not the composite
+            graphics.flush();
+            redraw(outerSize, key, painter);
+            drawnKey = key;
+            drawnAt = now;
+        }
+
+        blit(graphics, x, y, outerSize);
+    }
+
+    private void redraw(int outerSize, ViewKey key, Predicate<GuiGraphics> painter) {
+        Minecraft mc = Minecraft.getInstance();
+        int pixels = Math.max(1, (int) Math.ceil(outerSize * key.guiScale()));
+        if (target == null) {
+            target = new TextureTarget(pixels, pixels, false, Minecraft.ON_OSX);
+        } else if (target.width != pixels || target.height != pixels) {
+            target.resize(pixels, pixels, Minecraft.ON_OSX);
+        }
+
+        target.setClearColor(0.0F, 0.0F, 0.0F, 0.0F);
+        target.clear(Minecraft.ON_OSX);
+        target.bindWrite(true);
+
+        RenderSystem.backupProjectionMatrix();
+        RenderSystem.setProjectionMatrix(new Matrix4f().setOrtho(0.0F, outerSize, outerSize, 0.0F, 1000.0F, 21000.0F),
+                VertexSorting.ORTHOGRAPHIC_Z);
+
+        // Changes arriving from here on are caught by the next frame
+        tilesChanged = false;
+        RenderSystem.enableBlend();
+        RenderSystem.blendFuncSeparate(GlStateManager.SourceFactor.SRC_ALPHA, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA,
+                GlStateManager.SourceFactor.ONE, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA);
+        GuiGraphics offscreen = new GuiGraphics(mc, mc.renderBuffers().bufferSource());
+        complete = painter.test(offscreen);
+        offscreen.flush();
+
+        RenderSystem.defaultBlendFunc();
+        RenderSystem.restoreProjectionMatrix();
+        mc.getMainRenderTarget().bindWrite(true);
+    }
+
+    private void blit(GuiGraphics graphics, int x, int y, int size) {
+        Matrix4f pose = graphics.pose().last().pose();
+
+        RenderSystem.setShader(GameRenderer::getPositionTexShader);
+        RenderSystem.setShaderTexture(0, target.getColorTextureId());
+        RenderSystem.enableBlend();
+        // The composite was drawn over transparent black, so its colors are premultiplied
+        RenderSystem.blendFunc(GlStateManager.SourceFactor.ONE, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA);
+
+        // Render targets are stored bottom row first
+        BufferBuilder buffer = Tesselator.getInstance().begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_TEX);
+        buffer.addVertex(pose, x, y, 0.0F).setUv(0.0F, 1.0F);
+        buffer.addVertex(pose, x, y + size, 0.0F).setUv(0.0F, 0.0F);
+        buffer.addVertex(pose, x + size, y + size, 0.0F).setUv(1.0F, 0.0F);
+        buffer.addVertex(pose, x + size, y, 0.0F).setUv(1.0F, 1.0F);
+        BufferUploader.drawWithShader(buffer.buildOrThrow());
+
+        RenderSystem.defaultBlendFunc();
+        RenderSystem.disableBlend();
+    }
+}
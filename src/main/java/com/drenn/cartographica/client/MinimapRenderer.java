@@ -1,27 +1,22 @@
 package com.drenn.cartographica.client;
 
-import com.drenn.cartographica.Cartographica;
 import com.drenn.cartographica.config.CartographicaConfig;
-import com.mojang.blaze3d.platform.NativeImage;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
-import net.minecraft.client.renderer.texture.DynamicTexture;
-import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.player.Player;
 
-import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
-
-import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
-
 public class MinimapRenderer {
 
     private static final Minecraft mc = Minecraft.getInstance();
-    private static final Map<String, ResourceLocation> tileTextureCache = new HashMap<>();
-    private static int nextTextureId = 0;
+    private static final TileTextureService.View textures = TileTextureService.createView();
+    private static final MinimapComposite composite = new MinimapComposite();
+
+    /**
+     * Forget the cached minimap image; it is redrawn on the next frame
+     */
+    public static void invalidateComposite() {
+        composite.invalidate();
+    }
 
     /**
      * Render the minimap HUD overlay
@@ -60,34 +55,50 @@ public class MinimapRenderer {
      */
     private static void renderSquareMinimap(GuiGraphics graphics, int x, int y, int size, float partialTick) {
         Player player = mc.player;
-
-        // Draw background
-        graphics.fill(x, y, x + size, y + size, 0xAA000000);
-
-        // Render map tiles
-        renderMapTiles(graphics, x, y, size, partialTick);
-
-        // Draw border
-        if (CartographicaConfig.SHOW_BORDER.get()) {
-            int borderColor = CartographicaConfig.BORDER_COLOR.get();
-            int borderWidth = CartographicaConfig.BORDER_WIDTH.get();
-
-            for (int i = 0; i < borderWidth; i++) {
-                // Top
-                graphics.fill(x - i, y - i, x + size + i, y - i + 1, borderColor);
-                // Bottom
-                graphics.fill(x - i, y + size + i - 1, x + size + i, y + size + i, borderColor);
-                // Left
-                graphics.fill(x - i, y - i, x - i + 1, y + size + i, borderColor);
-                // Right
-                graphics.fill(x + size + i - 1, y - i, x + size + i, y + size + i, borderColor);
+        double zoom = CartographicaConfig.MINIMAP_ZOOM.get();
+        boolean showBorder = CartographicaConfig.SHOW_BORDER.get();
+        int borderColor = CartographicaConfig.BORDER_COLOR.get();
+        int borderWidth = showBorder ? CartographicaConfig.BORDER_WIDTH.get() : 0;
+
+        // The border's outer rings reach this far beyond the map
+        int inset = Math.max(0, borderWidth - 1);
+        int outerSize = size + 2 * inset;
+
+        // Background, tiles and border come from the cached composite, which follows the player in whole map pixels
+        MinimapComposite.ViewKey key = new MinimapComposite.ViewKey(
+                (long) Math.floor(player.getX() * zoom), (long) Math.floor(player.getZ() * zoom),
+                zoom, size, borderWidth, borderColor, mc.getWindow().getGuiScale());
+        composite.draw(graphics, x - inset, y - inset, outerSize, key, offscreen -> {
+            // Draw background
+            offscreen.fill(inset, inset, inset + size, inset + size, 0xAA000000);
+
+            // Render map tiles
+            boolean complete = renderMapTiles(offscreen, inset, inset, size, partialTick);
+
+            // Draw border
+            if (showBorder) {
+                renderBorder(offscreen, inset, inset, size, borderWidth, borderColor);
             }
-        }
+            return complete;
+        });
 
         // Draw player marker at center
         renderPlayerMarker(graphics, x + size / 2, y + size / 2);
     }
 
+    private static void renderBorder(GuiGraphics graphics, int x, int y, int size, int borderWidth, int borderColor) {
+        for (int i = 0; i < borderWidth; i++) {
+            // Top
+            graphics.fill(x - i, y - i, x + size + i, y - i + 1, borderColor);
+            // Bottom
+            graphics.fill(x - i, y + size + i - 1, x + size + i, y + size + i, borderColor);
+            // Left
+            graphics.fill(x - i, y - i, x - i + 1, y + size + i, borderColor);
+            // Right
+            graphics.fill(x + size + i - 1, y - i, x + size + i, y + size + i, borderColor);
+        }
+    }
+
     /**
      * Render circular minimap (with masking)
      */
@@ -99,10 +110,12 @@ public class MinimapRenderer {
 
     /**
      * Render map tiles in the minimap area
+     *
+     * @return false if a visible tile is still loading
      */
-    private static void renderMapTiles(GuiGraphics graphics, int screenX, int screenY, int size, float partialTick) {
+    private static boolean renderMapTiles(GuiGraphics graphics, int screenX, int screenY, int size, float partialTick) {
         if (mc.player == null || mc.level == null) {
-            return;
+            return true;
         }
 
         double playerX = mc.player.getX();
@@ -125,25 +138,27 @@ public class MinimapRenderer {
         int maxTileZ = TileManager.getTileZ(maxWorldZ);
 
         // Render each tile
+        boolean complete = true;
+        textures.beginFrame();
         for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
             for (int tileZ = minTileZ; tileZ <= maxTileZ; tileZ++) {
-                renderMinimapTile(graphics, tileX, tileZ, screenX, screenY, size, playerX, playerZ, zoom);
+                complete &= renderMinimapTile(graphics, tileX, tileZ, screenX, screenY, size, playerX, playerZ, zoom);
             }
         }
+        textures.endFrame();
+
+        composite.setVisibleTiles(minTileX, minTileZ, maxTileX, maxTileZ);
+        return complete;
     }
 
     /**
      * Render a single tile on the minimap
+     *
+     * @return false if the tile exists but is not drawn in full yet
      */
-    private static void renderMinimapTile(GuiGraphics graphics, int tileX, int tileZ,
+    private static boolean renderMinimapTile(GuiGraphics graphics, int tileX, int tileZ,
                                           int screenX, int screenY, int size,
                                           double playerX, double playerZ, double zoom) {
-        // Get tile texture
-        ResourceLocation texture = getTileTexture(tileX, tileZ);
-        if (texture == null) {
-            return;
-        }
-
         // Calculate tile world position
         double tileWorldX = tileX * TileManager.TILE_SIZE;
         double tileWorldZ = tileZ * TileManager.TILE_SIZE;
@@ -160,62 +175,25 @@ public class MinimapRenderer {
         // Clip to minimap bounds
         if (tileScreenX + tileScreenSize < screenX || tileScreenX > screenX + size ||
                 tileScreenY + tileScreenSize < screenY || tileScreenY > screenY + size) {
-            return; // Completely outside
+            return true; // Completely outside
+        }
+
+        // Get tile texture
+        TileTextureService.Region texture = textures.acquire(0, tileX, tileZ);
+        if (texture == null) {
+            return !TileManager.tileExists(tileX, tileZ);
         }
 
         // Draw the tile
         graphics.blit(
-                texture,
+                texture.location,
                 tileScreenX, tileScreenY,
                 tileScreenSize, tileScreenSize,
-                0.0F, 0.0F,
-                TileManager.TILE_SIZE, TileManager.TILE_SIZE,
+                texture.u, texture.v,
+                texture.size, texture.size,
                 TileManager.TILE_SIZE, TileManager.TILE_SIZE
         );
-    }
-
-    /**
-     * Get or load tile texture
-     */
-    private static ResourceLocation getTileTexture(int tileX, int tileZ) {
-        String key = tileX + "_" + tileZ;
-
-        if (tileTextureCache.containsKey(key)) {
-            return tileTextureCache.get(key);
-        }
-
-        // Load tile image
-        BufferedImage tileImage = TileManager.loadTile(tileX, tileZ);
-        if (tileImage == null) {
-            return null;
-        }
-
-        // Convert to NativeImage and upload to GPU
-        NativeImage nativeImage = new NativeImage(TileManager.TILE_SIZE, TileManager.TILE_SIZE, false);
-
-        for (int x = 0; x < TileManager.TILE_SIZE; x++) {
-            for (int y = 0; y < TileManager.TILE_SIZE; y++) {
-                int rgb = tileImage.getRGB(x, y);
-                int a = (rgb >> 24) & 0xFF;
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int abgr = (a << 24) | (b << 16) | (g << 8) | r;
-                nativeImage.setPixelRGBA(x, y, abgr);
-            }
-        }
-
-        DynamicTexture dynamicTexture = new DynamicTexture(nativeImage);
-
-        ResourceLocation location = ResourceLocation.fromNamespaceAndPath(
-                Cartographica.MOD_ID,
-                "minimap_tile_" + nextTextureId++
-        );
-
-        mc.getTextureManager().register(location, dynamicTexture);
-        tileTextureCache.put(key, location);
-
-        return location;
+        return !texture.placeholder;
     }
 
     /**
@@ -308,6 +286,17 @@ public class MinimapRenderer {
         if (CartographicaConfig.SHOW_FPS.get()) {
             String fps = mc.fpsString.split(" ")[0] + " FPS";
             graphics.drawString(mc.font, fps, x, textY, 0xFFFFFFFF, true);
+            textY += 12;
+        }
+
+        if (TileRecolorJob.isRunning()) {
+            String progress = String.format("Updating map colors: %.0f%%", TileRecolorJob.getProgress() * 100);
+            graphics.drawString(mc.font, progress, x, textY, 0xFFFFFFFF, true);
+            textY += 12;
+        }
+
+        if (CartographicaConfig.SHOW_DEBUG_PANEL.get()) {
+            MetricsPanel.render(graphics, mc.font, x, textY);
         }
     }
 
@@ -334,4 +323,4 @@ public class MinimapRenderer {
             case BOTTOM_LEFT, BOTTOM_RIGHT -> screenHeight - size - margin;
         };
     }
-}
\ No newline at end of file
+}
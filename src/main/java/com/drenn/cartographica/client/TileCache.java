@@ -0,0 +1,227 @@
+package com.drenn.cartographica.client;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-budgeted tile cache. When the budget is exceeded, the entry that has gone
+ * longest without access is evicted, with tiles far from the player aged faster.
+ * Dirty tiles are handed to the flusher before they leave the cache.
+ */
+public class TileCache {
+
+    /**
+     * How many accesses one tile of distance from the player is worth when picking a victim
+     */
+    private static final long DISTANCE_WEIGHT = 64;
+
+    public interface Flusher {
+        void flush(long key, int[] pixels);
+    }
+
+    private final Long2ObjectMap<Entry> entries = new Long2ObjectOpenHashMap<>();
+    private final Flusher flusher;
+
+    private long budgetBytes;
+    private long usedBytes;
+    private long clock;
+
+    private int focusTileX;
+    private int focusTileZ;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong dirtyFlushes = new AtomicLong();
+
+    public TileCache(long budgetBytes, Flusher flusher) {
+        this.budgetBytes = budgetBytes;
+        this.flusher = flusher;
+    }
+
+    public synchronized int[] get(long key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        entry.lastAccess = ++clock;
+        return entry.pixels;
+    }
+
+    /**
+     * Look up a tile without counting a hit or miss, for callers that poll every frame
+     */
+    public synchronized int[] peek(long key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        entry.lastAccess = ++clock;
+        return entry.pixels;
+    }
+
+    public synchronized void put(long key, int[] pixels) {
+        Entry previous = entries.get(key);
+        if (previous != null) {
+            if (previous.pixels == pixels) {
+                previous.lastAccess = ++clock;
+                return;
+            }
+            usedBytes -= previous.bytes;
+        }
+
+        Entry entry = new Entry(key, pixels);
+        entry.lastAccess = ++clock;
+        entry.dirty = previous != null && previous.dirty;
+        entries.put(key, entry);
+        usedBytes += entry.bytes;
+
+        evictToBudget();
+    }
+
+    public synchronized void markDirty(long key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.dirty = true;
+        }
+    }
+
+    public synchronized void markClean(long key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.dirty = false;
+        }
+    }
+
+    public synchronized void remove(long key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            usedBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * Drop everything, flushing dirty tiles first
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            if (entry.dirty) {
+                flush(entry);
+            }
+        }
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized void setFocus(int tileX, int tileZ) {
+        this.focusTileX = tileX;
+        this.focusTileZ = tileZ;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evictToBudget();
+    }
+
+    private void evictToBudget() {
+        // Always keep the most recent entry, even if a single tile exceeds the budget
+        while (usedBytes > budgetBytes && entries.size() > 1) {
+            Entry victim = null;
+            long victimKey = 0;
+            long worstScore = Long.MIN_VALUE;
+
+            for (Long2ObjectMap.Entry<Entry> candidate : entries.long2ObjectEntrySet()) {
+                Entry entry = candidate.getValue();
+                if (entry.lastAccess == clock) {
+                    continue;
+                }
+
+                long score = evictionScore(entry);
+                if (score > worstScore) {
+                    worstScore = score;
+                    victim = entry;
+                    victimKey = candidate.getLongKey();
+                }
+            }
+
+            if (victim == null) {
+                return;
+            }
+
+            if (victim.dirty) {
+                flush(victim);
+            }
+
+            entries.remove(victimKey);
+            usedBytes -= victim.bytes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private long evictionScore(Entry entry) {
+        long age = clock - entry.lastAccess;
+        long distance = Math.max(Math.abs(TileManager.tileKeyX(entry.key) - focusTileX),
+                Math.abs(TileManager.tileKeyZ(entry.key) - focusTileZ));
+        return age + distance * DISTANCE_WEIGHT;
+    }
+
+    private void flush(Entry entry) {
+        flusher.flush(entry.key, entry.pixels);
+        entry.dirty = false;
+        dirtyFlushes.incrementAndGet();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getDirtyFlushes() {
+        return dirtyFlushes.get();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private static class Entry {
+        final long key;
+        final int[] pixels;
+        final long bytes;
+        long lastAccess;
+        boolean dirty;
+
+        Entry(long key, int[] pixels) {
+            this.key = key;
+            this.pixels = pixels;
+            this.bytes = pixels.length * 4L;
+        }
+    }
+}
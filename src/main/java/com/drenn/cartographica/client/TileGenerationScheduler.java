@@ -0,0 +1,201 @@
+package com.drenn.cartographica.client;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which missing tile to generate next. Pending tiles are scored against the
+ * player's current tile every time one is dispatched, so the nearest always goes first;
+ * tiles the player has left behind are cancelled before they cost anything.
+ * Dispatch is paced by a token bucket and bounded by the number of tiles in flight.
+ * Client thread only, except for completions.
+ */
+public class TileGenerationScheduler {
+
+    public interface Generator {
+        /**
+         * Start generating a tile
+         *
+         * @return completes when the tile has been drawn
+         */
+        CompletableFuture<?> generate(int tileX, int tileZ);
+    }
+
+    private final Generator generator;
+    // Pending tile key -> time it was queued
+    private final Long2LongMap pending = new Long2LongOpenHashMap();
+    private final LongSet inFlight = new LongOpenHashSet();
+
+    private double tokens;
+
+    private long queued;
+    private long dispatched;
+    private long cancelled;
+    private long totalWaitMs;
+    private long maxWaitMs;
+    private final AtomicLong completed = new AtomicLong();
+
+    public TileGenerationScheduler(Generator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Queue a tile unless it is already pending or being generated
+     *
+     * @return whether it was queued
+     */
+    public boolean enqueue(int tileX, int tileZ) {
+        long key = TileManager.tileKey(tileX, tileZ);
+        synchronized (inFlight) {
+            if (inFlight.contains(key)) {
+                return false;
+            }
+        }
+        if (pending.containsKey(key)) {
+            return false;
+        }
+
+        pending.put(key, System.currentTimeMillis());
+        queued++;
+        return true;
+    }
+
+    /**
+     * Cancel pending tiles out of range and dispatch the nearest ones the rate and concurrency allow
+     *
+     * @param cancelRadius pending tiles further than this many tiles from the player are dropped
+     * @param tilesPerSecond dispatch rate
+     * @param maxInFlight tiles generated at once
+     */
+    public void tick(int playerTileX, int playerTileZ, int cancelRadius, double tilesPerSecond, int maxInFlight) {
+        LongIterator keys = pending.keySet().iterator();
+        while (keys.hasNext()) {
+            if (distance(keys.nextLong(), playerTileX, playerTileZ) > cancelRadius) {
+                keys.remove();
+                cancelled++;
+            }
+        }
+
+        if (pending.isEmpty()) {
+            // Do not bank tokens while idle, or a burst follows the next boundary crossing
+            tokens = 0;
+            return;
+        }
+
+        tokens = Math.min(tokens + tilesPerSecond / 20.0, Math.max(1, maxInFlight));
+        while (tokens >= 1 && !pending.isEmpty() && getInFlight() < maxInFlight) {
+            long key = nearest(playerTileX, playerTileZ);
+            long waitMs = System.currentTimeMillis() - pending.remove(key);
+            tokens--;
+            dispatch(key, waitMs);
+        }
+    }
+
+    private void dispatch(long key, long waitMs) {
+        dispatched++;
+        totalWaitMs += waitMs;
+        maxWaitMs = Math.max(maxWaitMs, waitMs);
+
+        synchronized (inFlight) {
+            inFlight.add(key);
+        }
+
+        CompletableFuture<?> generation;
+        try {
+            generation = generator.generate(TileManager.tileKeyX(key), TileManager.tileKeyZ(key));
+        } catch (RuntimeException e) {
+            generation = CompletableFuture.failedFuture(e);
+        }
+
+        generation.whenComplete((result, error) -> {
+            synchronized (inFlight) {
+                inFlight.remove(key);
+            }
+            completed.incrementAndGet();
+        });
+    }
+
+    private long nearest(int playerTileX, int playerTileZ) {
+        long best = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (Long2LongMap.Entry entry : pending.long2LongEntrySet()) {
+            long key = entry.getLongKey();
+            int dx = TileManager.tileKeyX(key) - playerTileX;
+            int dz = TileManager.tileKeyZ(key) - playerTileZ;
+            long distance = (long) dx * dx + (long) dz * dz;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = key;
+            }
+        }
+        return best;
+    }
+
+    private static int distance(long key, int playerTileX, int playerTileZ) {
+        return Math.max(Math.abs(TileManager.tileKeyX(key) - playerTileX), Math.abs(TileManager.tileKeyZ(key) - playerTileZ));
+    }
+
+    /**
+     * Drop every pending tile, e.g. on world or dimension change. Tiles in flight finish.
+     */
+    public void clear() {
+        cancelled += pending.size();
+        pending.clear();
+        tokens = 0;
+    }
+
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    public int getInFlight() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    public long getQueued() {
+        return queued;
+    }
+
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return average time from queueing to dispatch, in milliseconds
+     */
+    public double getAverageWaitMs() {
+        return dispatched == 0 ? 0.0 : (double) totalWaitMs / dispatched;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    /**
+     * @return how long the oldest pending tile has been waiting, in milliseconds
+     */
+    public long getOldestWaitMs() {
+        long now = System.currentTimeMillis();
+        long oldest = 0;
+        for (long queuedAt : pending.values()) {
+            oldest = Math.max(oldest, now - queuedAt);
+        }
+        return oldest;
+    }
+}
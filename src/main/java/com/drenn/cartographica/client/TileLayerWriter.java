@@ -0,0 +1,119 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.Cartographica;
+import com.drenn.cartographica.storage.TileLayers;
+import com.drenn.cartographica.storage.TileRegionStore;
+import net.minecraft.world.level.ChunkPos;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the snapshots of drawn chunks until their tile is saved, then merges them into
+ * the tile's stored {@link TileLayers}. The newest snapshot of a chunk wins.
+ */
+public class TileLayerWriter {
+
+    private final Long2ObjectMap<Int2ObjectMap<ChunkSnapshot>> pending = new Long2ObjectOpenHashMap<>();
+
+    public void add(int tileX, int tileZ, ChunkSnapshot snapshot) {
+        int chunk = chunkIndex(snapshot);
+        synchronized (pending) {
+            pending.computeIfAbsent(ChunkPos.asLong(tileX, tileZ), key -> new Int2ObjectOpenHashMap<>())
+                    .put(chunk, snapshot);
+        }
+    }
+
+    /**
+     * Merge the tile's pending chunks into its stored layers, if there are any
+     */
+    public void flush(TileRegionStore store, int tileX, int tileZ) throws IOException {
+        Int2ObjectMap<ChunkSnapshot> chunks;
+        synchronized (pending) {
+            chunks = pending.remove(ChunkPos.asLong(tileX, tileZ));
+        }
+        if (chunks == null) {
+            return;
+        }
+
+        TileLayers layers = read(store, tileX, tileZ);
+        apply(layers, chunks.values(), tileX, tileZ);
+        store.write(tileX, tileZ, layers.encode());
+    }
+
+    /**
+     * Apply chunks drawn since the tile was last saved, so stored layers are complete without waiting for the save
+     */
+    public void applyPending(TileLayers layers, int tileX, int tileZ) {
+        List<ChunkSnapshot> chunks;
+        synchronized (pending) {
+            Int2ObjectMap<ChunkSnapshot> tileChunks = pending.get(ChunkPos.asLong(tileX, tileZ));
+            chunks = tileChunks == null ? List.of() : new ArrayList<>(tileChunks.values());
+        }
+        apply(layers, chunks, tileX, tileZ);
+    }
+
+    public void clear() {
+        synchronized (pending) {
+            pending.clear();
+        }
+    }
+
+    /**
+     * @return the stored layers, or empty layers if there are none or they cannot be decoded
+     */
+    public static TileLayers read(TileRegionStore store, int tileX, int tileZ) throws IOException {
+        byte[] data = store.read(tileX, tileZ);
+        if (data == null) {
+            return new TileLayers(TileManager.TILE_SIZE);
+        }
+
+        try {
+            return TileLayers.decode(data, TileManager.TILE_SIZE);
+        } catch (IOException e) {
+            // Layers are rebuilt as chunks are drawn again; the tile's pixels are unaffected
+            Cartographica.LOGGER.warn("Discarding unreadable layers of tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            return new TileLayers(TileManager.TILE_SIZE);
+        }
+    }
+
+    private static void apply(TileLayers layers, Iterable<ChunkSnapshot> chunks, int tileX, int tileZ) {
+        Int2ObjectMap<String> biomeNames = new Int2ObjectOpenHashMap<>();
+
+        for (ChunkSnapshot snapshot : chunks) {
+            int originX = (snapshot.getChunkX() << 4) - tileX * TileManager.TILE_SIZE;
+            int originZ = (snapshot.getChunkZ() << 4) - tileZ * TileManager.TILE_SIZE;
+
+            for (int dz = 0; dz < 16; dz++) {
+                for (int dx = 0; dx < 16; dx++) {
+                    int index = ChunkSnapshot.index(dx, dz);
+
+                    int biomeId = snapshot.getBiomeId(index);
+                    String biome = biomeNames.get(biomeId);
+                    if (biome == null) {
+                        biome = snapshot.getBiomeName(index);
+                        biomeNames.put(biomeId, biome);
+                    }
+
+                    layers.setColumn((originZ + dz) * TileManager.TILE_SIZE + originX + dx,
+                            snapshot.getHeight(index),
+                            LayerNames.stateName(snapshot.getStateId(index)),
+                            biome,
+                            snapshot.getWaterDepth(index));
+                }
+            }
+        }
+    }
+
+    private static int chunkIndex(ChunkSnapshot snapshot) {
+        int chunksPerTile = TileManager.TILE_SIZE / 16;
+        return Math.floorMod(snapshot.getChunkZ(), chunksPerTile) * chunksPerTile
+                + Math.floorMod(snapshot.getChunkX(), chunksPerTile);
+    }
+}
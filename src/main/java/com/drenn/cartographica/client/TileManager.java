@@ -1,36 +1,151 @@
 package com.drenn.cartographica.client;
 
 import com.drenn.cartographica.Cartographica;
+import com.drenn.cartographica.config.CartographicaConfig;
+import com.drenn.cartographica.metrics.PipelineMetrics;
+import com.drenn.cartographica.storage.ChunkMetadata;
+import com.drenn.cartographica.storage.ChunkMetadataStore;
+import com.drenn.cartographica.storage.LegacyPngTiles;
+import com.drenn.cartographica.storage.TileCodec;
+import com.drenn.cartographica.storage.TileIndex;
+import com.drenn.cartographica.storage.TileLayers;
+import com.drenn.cartographica.storage.TileLodPyramid;
+import com.drenn.cartographica.storage.TileRegionStore;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.color.block.BlockColors;
-import net.minecraft.client.renderer.block.BlockModelShaper;
-import net.minecraft.client.renderer.texture.TextureAtlasSprite;
-import net.minecraft.client.resources.model.BakedModel;
-import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
 import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.Blocks;
-import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.chunk.LevelChunk;
-import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.biome.Biome;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 public class TileManager {
 
     public static final int TILE_SIZE = 512;
 
-    private static File tileDirectory;
-    private static final ExecutorService renderExecutor = Executors.newFixedThreadPool(2);
-    private static final ConcurrentHashMap<String, BufferedImage> tileCache = new ConcurrentHashMap<>();
+    /**
+     * Notified on a render worker after a chunk has been drawn into its tile
+     */
+    public interface TileChangeListener {
+        /**
+         * @param chunkX chunk column within the tile, 0 to TILE_SIZE / 16 - 1
+         * @param chunkZ chunk row within the tile, 0 to TILE_SIZE / 16 - 1
+         */
+        void onChunkChanged(int tileX, int tileZ, int chunkX, int chunkZ);
+
+        /**
+         * Notified on the LOD thread after a level tile has been rewritten
+         */
+        default void onLodTileChanged(int level, int x, int z) {
+        }
+    }
+
+    public static final String TILE_EXTENSION = "ctr";
+    public static final String METADATA_EXTENSION = "ctm";
+    public static final String LAYERS_EXTENSION = "ctl";
+    public static final int CHUNKS_PER_TILE = TILE_SIZE / 16;
+
+    private static volatile File tileDirectory;
+    private static volatile TileRegionStore tileStore;
+    private static volatile TileLodPyramid tileLod;
+    private static volatile TileIndex tileIndex;
+    private static volatile ChunkMetadataStore chunkMetadata;
+    private static volatile TileRegionStore layerStore;
+    private static final TileLayerWriter tileLayerWriter = new TileLayerWriter();
+    private static final AtomicLong unchangedChunksSkipped = new AtomicLong();
+    // Chunks per render subtask when generating a whole tile: one column of chunks
+    private static final int CHUNKS_PER_TASK = CHUNKS_PER_TILE;
+
+    private static volatile ExecutorService renderExecutor;
+    private static CartographicaConfig.WorkerPoolType renderPoolType;
+    private static int renderPoolThreads;
+    // Bumped by unload(); render work started in an older session drops its result
+    private static final AtomicInteger session = new AtomicInteger();
+    // Held shared by render work while it touches tiles, exclusively by unload(), so no render straddles a world change
+    private static final ReentrantReadWriteLock sessionLock = new ReentrantReadWriteLock(true);
+    // Background sweep moving PNG tiles into region files, and its stop flag; client thread only
+    private static Thread migrationThread;
+    private static AtomicBoolean migrationCancelled;
+    // Tiles whose chunks are being captured for generation; client thread only
+    private static final List<TileCapture> captures = new ArrayList<>();
+    private static final ExecutorService lodExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Cartographica LOD");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService ioExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "Cartographica Tile IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // In-flight background loads by LOD tile key, so a tile is read once however often it is asked for
+    private static final Long2ObjectMap<CompletableFuture<int[]>> tileLoads = new Long2ObjectOpenHashMap<>();
+    private static final LongSet lodBuildsRequested = new LongOpenHashSet();
+    private static final List<TileChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private static final Object loadLock = new Object();
+    private static final ThreadLocal<int[]> CHUNK_PIXELS = ThreadLocal.withInitial(() -> new int[16 * 16]);
+    private static final TileWriter tileWriter = new TileWriter(
+            TileManager::saveTile,
+            key -> TileManager.tileCache.markClean(key),
+            CartographicaConfig.SAVE_QUIET_PERIOD_MS.getDefault(),
+            CartographicaConfig.SAVE_MAX_DELAY_MS.getDefault());
+    private static final ChunkUpdateQueue chunkUpdateQueue = new ChunkUpdateQueue(
+            task -> {
+                int started = session.get();
+                renderExecutor().execute(() -> runInSession(started, task));
+            },
+            snapshot -> {
+                try {
+                    updateChunkInTileInternal(snapshot);
+                } catch (Exception e) {
+                    Cartographica.LOGGER.error("Error updating chunk in tile: {}", e.getMessage());
+                }
+            },
+            CartographicaConfig.MAX_PENDING_CHUNK_UPDATES.getDefault());
+    private static final TileCache tileCache = new TileCache(
+            CartographicaConfig.TILE_CACHE_BUDGET_MB.getDefault() * 1024L * 1024L,
+            (key, image) -> tileWriter.expedite(key));
 
     public static void initialize(String worldName, String dimensionName) {
+        // Persist the previous dimension's tiles before switching directories
+        unload();
+        tileCache.setBudgetBytes(CartographicaConfig.TILE_CACHE_BUDGET_MB.get() * 1024L * 1024L);
+        tileWriter.setDelays(CartographicaConfig.SAVE_QUIET_PERIOD_MS.get(), CartographicaConfig.SAVE_MAX_DELAY_MS.get());
+        chunkUpdateQueue.setMaxPending(CartographicaConfig.MAX_PENDING_CHUNK_UPDATES.get());
+        configureRenderPool(CartographicaConfig.RENDER_POOL_TYPE.get(), CartographicaConfig.RENDER_THREADS.get());
+
         File gameDir = Minecraft.getInstance().gameDirectory;
         tileDirectory = new File(gameDir, "cartographica/" + worldName + "/" + dimensionName + "/tiles");
 
@@ -41,12 +156,294 @@ public class TileManager {
             Cartographica.LOGGER.info("Tile directory exists: {}", tileDirectory.getAbsolutePath());
         }
 
+        TileRegionStore store = new TileRegionStore(tileDirectory.toPath(), TILE_EXTENSION);
+        tileIndex = buildIndex(store);
+        tileStore = store;
+        tileLod = new TileLodPyramid(store, TILE_EXTENSION, TILE_SIZE);
+        chunkMetadata = new ChunkMetadataStore(tileDirectory.toPath(), METADATA_EXTENSION, CHUNKS_PER_TILE);
+        layerStore = new TileRegionStore(tileDirectory.toPath(), LAYERS_EXTENSION);
+        startLegacyMigration(store);
+    }
+
+    /**
+     * Read which tiles exist from the region headers, once per dimension
+     */
+    private static TileIndex buildIndex(TileRegionStore store) {
+        long start = System.nanoTime();
+        try {
+            TileIndex index = TileIndex.scan(store);
+            Cartographica.LOGGER.info("Indexed {} tiles in {} ms", index.size(), (System.nanoTime() - start) / 1_000_000);
+            return index;
+        } catch (IOException e) {
+            // Without an index every check falls through to the store
+            Cartographica.LOGGER.error("Failed to index tiles: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Replace the render pool if its configured type or size changed. Work already queued
+     * on the old pool still finishes there.
+     *
+     * @param threads worker count, 0 for one per core but one
+     */
+    private static synchronized void configureRenderPool(CartographicaConfig.WorkerPoolType type, int threads) {
+        int resolved = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        if (renderExecutor != null && type == renderPoolType && resolved == renderPoolThreads) {
+            return;
+        }
+
+        ExecutorService previous = renderExecutor;
+        renderExecutor = createRenderPool(type, resolved);
+        renderPoolType = type;
+        renderPoolThreads = resolved;
+        if (previous != null) {
+            previous.shutdown();
+        }
+        Cartographica.LOGGER.info("Render pool: {} with {} threads", type, resolved);
+    }
+
+    private static ExecutorService createRenderPool(CartographicaConfig.WorkerPoolType type, int threads) {
+        return switch (type) {
+            // One virtual thread per task; the JVM schedules them over its own carrier threads
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Cartographica Render ", 0).factory());
+            case WORK_STEALING -> Executors.newWorkStealingPool(threads);
+            case PLATFORM -> Executors.newFixedThreadPool(threads, Thread.ofPlatform().daemon().name("Cartographica Render ", 0).factory());
+        };
+    }
+
+    /**
+     * The render pool, created with the configured defaults if no world has been joined yet
+     */
+    private static ExecutorService renderExecutor() {
+        ExecutorService executor = renderExecutor;
+        if (executor == null) {
+            configureRenderPool(CartographicaConfig.WorkerPoolType.PLATFORM, 2);
+            executor = renderExecutor;
+        }
+        return executor;
+    }
+
+    /**
+     * Move old one-PNG-per-tile files into region files in the background.
+     * Loads import any tile the sweep has not reached yet, so nothing is missed meanwhile.
+     */
+    private static void startLegacyMigration(TileRegionStore store) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Thread thread = new Thread(() -> {
+            try {
+                int migrated = LegacyPngTiles.migrateAll(store.getDirectory(), store, cancelled::get);
+                if (migrated > 0) {
+                    Cartographica.LOGGER.info("Migrated {} PNG tiles into region files", migrated);
+                }
+            } catch (IOException e) {
+                Cartographica.LOGGER.error("Failed to migrate PNG tiles: {}", e.getMessage());
+            }
+        }, "Cartographica Tile Migration");
+        thread.setDaemon(true);
+        migrationCancelled = cancelled;
+        migrationThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the migration sweep after the tile it is on, so it never writes into a closed store
+     */
+    private static void stopLegacyMigration(long timeoutMs) {
+        Thread thread = migrationThread;
+        migrationThread = null;
+        if (thread == null) {
+            return;
+        }
+
+        migrationCancelled.set(true);
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            Cartographica.LOGGER.warn("PNG tile migration still running after {} ms", timeoutMs);
+        }
+    }
+
+    /**
+     * Write out pending tiles and drop the cache, e.g. on dimension change or disconnect
+     */
+    public static void unload() {
+        for (TileCapture capture : captures) {
+            capture.result.complete(null);
+        }
+        captures.clear();
+        endSession();
+        stopLegacyMigration(CartographicaConfig.SAVE_DRAIN_TIMEOUT_MS.get());
         tileCache.clear();
+        tileWriter.drain(CartographicaConfig.SAVE_DRAIN_TIMEOUT_MS.get());
+        drainLod(CartographicaConfig.SAVE_DRAIN_TIMEOUT_MS.get());
+        tileLayerWriter.clear();
+        closeStores();
+    }
+
+    /**
+     * Wait for render work touching the current tiles, then invalidate everything queued behind it
+     */
+    private static void endSession() {
+        sessionLock.writeLock().lock();
+        try {
+            session.incrementAndGet();
+            chunkUpdateQueue.clear();
+        } finally {
+            sessionLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Run render work unless the session it was started in has ended
+     *
+     * @return false if the work was dropped
+     */
+    private static boolean runInSession(int expected, Runnable work) {
+        return callInSession(expected, () -> {
+            work.run();
+            return Boolean.TRUE;
+        }) != null;
+    }
+
+    /**
+     * @return the work's result, or null if the session it was started in has ended
+     */
+    private static <T> T callInSession(int expected, Supplier<T> work) {
+        sessionLock.readLock().lock();
+        try {
+            return session.get() == expected ? work.get() : null;
+        } finally {
+            sessionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Wait for queued LOD updates, so the pyramid matches the tiles that were just saved
+     */
+    private static void drainLod(long timeoutMs) {
+        synchronized (lodBuildsRequested) {
+            lodBuildsRequested.clear();
+        }
+
+        try {
+            Future<?> marker = lodExecutor.submit(() -> { });
+            marker.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Cartographica.LOGGER.warn("LOD updates still pending after {} ms; they will be rebuilt later", timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Executor already shut down, nothing is queued
+        }
+    }
+
+    private static void closeStores() {
+        tileIndex = null;
+
+        TileRegionStore layers = layerStore;
+        layerStore = null;
+        if (layers != null) {
+            layers.close();
+        }
+
+        ChunkMetadataStore metadata = chunkMetadata;
+        chunkMetadata = null;
+        if (metadata != null) {
+            metadata.close();
+        }
+
+        TileLodPyramid lod = tileLod;
+        tileLod = null;
+        if (lod != null) {
+            lod.close();
+        }
+
+        TileRegionStore store = tileStore;
+        tileStore = null;
+        if (store != null) {
+            store.close();
+        }
     }
 
+    /**
+     * Let queued renders finish, then drain pending writes within the configured bound
+     */
     public static void shutdown() {
-        renderExecutor.shutdownNow();
+        long timeoutMs = CartographicaConfig.SAVE_DRAIN_TIMEOUT_MS.get();
+        ExecutorService executor = renderExecutor;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(timeoutMs / 2, TimeUnit.MILLISECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        endSession();
+        stopLegacyMigration(timeoutMs / 2);
         tileCache.clear();
+        tileWriter.shutdown(timeoutMs / 2);
+        drainLod(timeoutMs / 2);
+        lodExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+        closeStores();
+    }
+
+    /**
+     * Tell the cache where the player is, so far-away tiles are evicted first
+     */
+    public static void setPlayerTile(int tileX, int tileZ) {
+        tileCache.setFocus(tileX, tileZ);
+    }
+
+    public static void addChangeListener(TileChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public static void removeChangeListener(TileChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private static void notifyLodTileChanged(int level, int x, int z) {
+        for (TileChangeListener listener : changeListeners) {
+            listener.onLodTileChanged(level, x, z);
+        }
+    }
+
+    private static void notifyChunkChanged(int tileX, int tileZ, ChunkSnapshot snapshot) {
+        int chunkX = Math.floorMod(snapshot.getChunkX(), CHUNKS_PER_TILE);
+        int chunkZ = Math.floorMod(snapshot.getChunkZ(), CHUNKS_PER_TILE);
+        for (TileChangeListener listener : changeListeners) {
+            listener.onChunkChanged(tileX, tileZ, chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * @return the current dimension's tile directory, or null if no world is loaded
+     */
+    public static Path getTileDirectory() {
+        File directory = tileDirectory;
+        return directory == null ? null : directory.toPath();
+    }
+
+    public static TileCache getTileCache() {
+        return tileCache;
+    }
+
+    public static TileWriter getTileWriter() {
+        return tileWriter;
+    }
+
+    public static ChunkUpdateQueue getChunkUpdateQueue() {
+        return chunkUpdateQueue;
     }
 
     public static int getTileX(int worldX) {
@@ -57,347 +454,746 @@ public class TileManager {
         return Math.floorDiv(worldZ, TILE_SIZE);
     }
 
+    /**
+     * Pack tile coordinates into a single long, so lookups never build Strings
+     */
+    public static long tileKey(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Like {@link #tileKey} with the LOD level folded into the top bits; level 0 gives the plain tile key.
+     * Tile coordinates stay far below 2^28, so keys of different levels never collide.
+     */
+    public static long lodTileKey(int level, int tileX, int tileZ) {
+        return tileKey(tileX, tileZ) ^ ((long) level << 60);
+    }
+
+    public static int tileKeyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int tileKeyZ(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Whether a tile has been saved or is in memory; answered from memory once the index is built
+     */
     public static boolean tileExists(int tileX, int tileZ) {
-        if (tileDirectory == null) {
+        TileIndex index = tileIndex;
+        if (index != null) {
+            return index.contains(tileX, tileZ) || tileCache.peek(tileKey(tileX, tileZ)) != null;
+        }
+
+        // Index could not be built; ask the store
+        TileRegionStore store = tileStore;
+        if (store == null) {
+            return false;
+        }
+
+        try {
+            return store.exists(tileX, tileZ)
+                    || Files.exists(LegacyPngTiles.legacyPath(store.getDirectory(), tileX, tileZ));
+        } catch (IOException e) {
             return false;
         }
-        File tileFile = new File(tileDirectory, tileX + "_" + tileZ + ".png");
-        return tileFile.exists();
     }
 
-    public static BufferedImage loadTile(int tileX, int tileZ) {
-        String key = tileX + "_" + tileZ;
+    /**
+     * @return the tile's ABGR pixels, shared with the cache; lock the array while reading it
+     */
+    public static int[] loadTile(int tileX, int tileZ) {
+        long key = tileKey(tileX, tileZ);
 
-        if (tileCache.containsKey(key)) {
-            return tileCache.get(key);
+        int[] cached = tileCache.get(key);
+        if (cached != null) {
+            return cached;
         }
 
-        if (tileDirectory == null) {
+        TileRegionStore store = tileStore;
+        if (store == null) {
             return null;
         }
 
-        File tileFile = new File(tileDirectory, tileX + "_" + tileZ + ".png");
+        synchronized (loadLock) {
+            // Another thread may have loaded it while we waited
+            cached = tileCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
 
-        if (!tileFile.exists()) {
-            return null;
-        }
+            // Evicted but not yet written: the pending pixels are newer than the file
+            int[] pending = tileWriter.getPending(store, key);
+            if (pending != null) {
+                tileCache.put(key, pending);
+                tileCache.markDirty(key);
+                return pending;
+            }
 
-        try {
-            BufferedImage image = ImageIO.read(tileFile);
-            tileCache.put(key, image);
-            return image;
-        } catch (IOException e) {
-            Cartographica.LOGGER.error("Failed to load tile {}_{}: {}", tileX, tileZ, e.getMessage());
-            return null;
+            // Never saved: no need to look on disk
+            TileIndex index = tileIndex;
+            if (index != null && !index.contains(tileX, tileZ)) {
+                return null;
+            }
+
+            try {
+                byte[] data = store.read(tileX, tileZ);
+                if (data == null && LegacyPngTiles.importTile(store.getDirectory(), store, tileX, tileZ)) {
+                    data = store.read(tileX, tileZ);
+                }
+                if (data == null) {
+                    return null;
+                }
+
+                long start = System.nanoTime();
+                int[] pixels;
+                try {
+                    pixels = TileCodec.decode(data, TILE_SIZE, TILE_SIZE);
+                } catch (IOException e) {
+                    // The stored pixels are gone, so nothing drawn into them may be skipped
+                    Cartographica.LOGGER.error("Unreadable tile {}_{}: {}", tileX, tileZ, e.getMessage());
+                    resetChunkMetadata(tileX, tileZ);
+                    return null;
+                }
+                PipelineMetrics.TILE_DECODE.recordSince(start);
+                tileCache.put(key, pixels);
+                return pixels;
+            } catch (IOException e) {
+                Cartographica.LOGGER.error("Failed to load tile {}_{}: {}", tileX, tileZ, e.getMessage());
+                return null;
+            }
         }
     }
 
-    public static void updateChunkInTile(Level level, LevelChunk chunk) {
-        if (!level.isClientSide()) {
-            return;
+    /**
+     * @return the tile's pixels if they are already in memory; never reads from disk
+     */
+    public static int[] peekTile(int tileX, int tileZ) {
+        return tileCache.peek(tileKey(tileX, tileZ));
+    }
+
+    /**
+     * @return a level tile's pixels if they are already in memory; never reads from disk
+     */
+    public static int[] peekLodTile(int level, int x, int z) {
+        if (level == 0) {
+            return peekTile(x, z);
         }
 
-        ChunkPos chunkPos = chunk.getPos();
-        int chunkWorldX = chunkPos.x << 4;
-        int chunkWorldZ = chunkPos.z << 4;
+        TileLodPyramid lod = tileLod;
+        return lod == null ? null : lod.peek(level, x, z);
+    }
 
-        int tileX = getTileX(chunkWorldX);
-        int tileZ = getTileZ(chunkWorldZ);
+    /**
+     * Load a tile (level 0) or level tile on the I/O executor, so the render thread never waits for disk.
+     * Concurrent requests for the same tile share one read.
+     *
+     * @return completes with the pixels, or null if the tile does not exist
+     */
+    public static CompletableFuture<int[]> loadTileAsync(int level, int x, int z) {
+        long key = lodTileKey(level, x, z);
+        synchronized (tileLoads) {
+            CompletableFuture<int[]> running = tileLoads.get(key);
+            if (running != null) {
+                return running;
+            }
 
-        renderExecutor.submit(() -> {
+            CompletableFuture<int[]> load;
             try {
-                updateChunkInTileInternal(level, chunk, tileX, tileZ);
-            } catch (Exception e) {
-                Cartographica.LOGGER.error("Error updating chunk in tile: {}", e.getMessage());
+                load = CompletableFuture.supplyAsync(() -> level == 0 ? loadTile(x, z) : loadLodTile(level, x, z), ioExecutor);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                return CompletableFuture.completedFuture(null);
             }
-        });
-    }
 
-    private static void updateChunkInTileInternal(Level level, LevelChunk chunk, int tileX, int tileZ) {
-        String key = tileX + "_" + tileZ;
-        BufferedImage tileImage = tileCache.get(key);
+            tileLoads.put(key, load);
+            load.whenComplete((pixels, error) -> {
+                synchronized (tileLoads) {
+                    tileLoads.remove(key);
+                }
+                if (error != null) {
+                    Cartographica.LOGGER.error("Failed to load LOD {} tile {}_{}: {}", level, x, z, error.getMessage());
+                }
+            });
+            return load;
+        }
+    }
 
-        if (tileImage == null) {
-            tileImage = loadTile(tileX, tileZ);
+    /**
+     * Load a tile, or create and cache an empty one if it does not exist yet
+     */
+    private static int[] loadOrCreateTile(int tileX, int tileZ) {
+        int[] pixels = loadTile(tileX, tileZ);
+        if (pixels != null) {
+            return pixels;
         }
 
-        if (tileImage == null) {
-            tileImage = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
-            for (int x = 0; x < TILE_SIZE; x++) {
-                for (int z = 0; z < TILE_SIZE; z++) {
-                    tileImage.setRGB(x, z, 0x00000000);
-                }
+        synchronized (loadLock) {
+            long key = tileKey(tileX, tileZ);
+            pixels = tileCache.get(key);
+            if (pixels == null) {
+                // New tiles are zero-filled, i.e. fully transparent; metadata of a lost tile must not survive them
+                resetChunkMetadata(tileX, tileZ);
+                pixels = new int[TILE_SIZE * TILE_SIZE];
+                tileCache.put(key, pixels);
             }
+            return pixels;
         }
+    }
 
-        Minecraft minecraft = Minecraft.getInstance();
-        BlockColors blockColors = minecraft.getBlockColors();
-        BlockModelShaper modelShaper = minecraft.getBlockRenderer().getBlockModelShaper();
+    private static void resetChunkMetadata(int tileX, int tileZ) {
+        ChunkMetadataStore store = chunkMetadata;
+        if (store == null) {
+            return;
+        }
 
-        ChunkPos chunkPos = chunk.getPos();
-        int chunkWorldX = chunkPos.x << 4;
-        int chunkWorldZ = chunkPos.z << 4;
+        try {
+            store.reset(tileX, tileZ);
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to reset chunk metadata for tile {}_{}: {}", tileX, tileZ, e.getMessage());
+        }
+    }
 
-        for (int dx = 0; dx < 16; dx++) {
-            for (int dz = 0; dz < 16; dz++) {
-                int worldX = chunkWorldX + dx;
-                int worldZ = chunkWorldZ + dz;
+    /**
+     * Queue a changed tile for write-behind persistence
+     */
+    private static void markTileDirty(int tileX, int tileZ, int[] pixels) {
+        TileRegionStore store = tileStore;
+        if (store == null) {
+            return;
+        }
 
-                int tileLocalX = worldX - (tileX * TILE_SIZE);
-                int tileLocalZ = worldZ - (tileZ * TILE_SIZE);
+        long key = tileKey(tileX, tileZ);
+        tileCache.markDirty(key);
+        tileWriter.markDirty(store, key, pixels);
+    }
 
-                if (tileLocalX < 0 || tileLocalX >= TILE_SIZE ||
-                        tileLocalZ < 0 || tileLocalZ >= TILE_SIZE) {
-                    continue;
-                }
+    /**
+     * Queue a captured chunk for rendering into its tile
+     */
+    public static void updateChunkInTile(ChunkSnapshot snapshot) {
+        chunkUpdateQueue.submit(snapshot);
+    }
 
-                int worldY = level.getHeight(Heightmap.Types.WORLD_SURFACE, worldX, worldZ) - 1;
-                worldY = Math.max(level.getMinBuildHeight(), Math.min(worldY, level.getMaxBuildHeight()));
+    /**
+     * Capture chunks again that were dropped while the update queue was full, as far as the queue
+     * has room and the chunks are still loaded. Client thread only.
+     */
+    public static void retryDroppedChunks(Level level) {
+        LongList keys = chunkUpdateQueue.takeDropped(CartographicaConfig.TILE_CAPTURE_CHUNKS_PER_TICK.get());
+        for (int i = 0; i < keys.size(); i++) {
+            long key = keys.getLong(i);
+            int chunkX = ChunkPos.getX(key);
+            int chunkZ = ChunkPos.getZ(key);
+            if (level.hasChunk(chunkX, chunkZ)) {
+                chunkUpdateQueue.submit(ChunkSnapshot.capture(level.getChunk(chunkX, chunkZ)));
+            }
+        }
+    }
 
-                BlockPos pos = new BlockPos(worldX, worldY, worldZ);
-                BlockState blockState = level.getBlockState(pos);
+    private static void updateChunkInTileInternal(ChunkSnapshot snapshot) {
+        int tileX = getTileX(snapshot.getChunkX() << 4);
+        int tileZ = getTileZ(snapshot.getChunkZ() << 4);
 
-                int color = getBlockColor(blockColors, modelShaper, level, pos, blockState);
-                tileImage.setRGB(tileLocalX, tileLocalZ, color);
-            }
+        // Most chunk loads in a visited area show nothing new; skip them before even loading the tile.
+        // Metadata of a tile that no longer exists is stale; loadOrCreateTile resets it.
+        ChunkMetadata metadata = metadataFor(tileX, tileZ);
+        long hash = snapshot.contentHash();
+        if (tileExists(tileX, tileZ) && isUnchanged(metadata, snapshot, hash)) {
+            return;
         }
 
-        tileCache.put(key, tileImage);
-        saveTile(tileX, tileZ, tileImage);
+        int[] pixels = loadOrCreateTile(tileX, tileZ);
+        renderChunkToTile(snapshot, tileX, tileZ, pixels, Minecraft.getInstance().getBlockColors(), metadata, hash);
+        markTileDirty(tileX, tileZ, pixels);
     }
 
-    public static void generateAndSaveTile(Level level, int tileX, int tileZ) {
-        renderExecutor.submit(() -> {
-            try {
-                generateAndSaveTileInternal(level, tileX, tileZ);
-            } catch (Exception e) {
-                Cartographica.LOGGER.error("Error generating tile: {}", e.getMessage());
-            }
-        });
-    }
+    /**
+     * @return the tile's per-chunk metadata, or null if it cannot be read (chunks are then always drawn)
+     */
+    private static ChunkMetadata metadataFor(int tileX, int tileZ) {
+        ChunkMetadataStore store = chunkMetadata;
+        if (store == null) {
+            return null;
+        }
 
-    private static void generateAndSaveTileInternal(Level level, int tileX, int tileZ) {
-        BufferedImage tileImage = loadTile(tileX, tileZ);
+        try {
+            return store.get(tileX, tileZ);
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to load chunk metadata for tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            return null;
+        }
+    }
 
-        if (tileImage == null) {
-            tileImage = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
-            for (int x = 0; x < TILE_SIZE; x++) {
-                for (int z = 0; z < TILE_SIZE; z++) {
-                    tileImage.setRGB(x, z, 0x00000000);
-                }
-            }
+    private static boolean isUnchanged(ChunkMetadata metadata, ChunkSnapshot snapshot, long hash) {
+        if (metadata == null || !metadata.matches(Math.floorMod(snapshot.getChunkX(), CHUNKS_PER_TILE),
+                Math.floorMod(snapshot.getChunkZ(), CHUNKS_PER_TILE), hash)) {
+            return false;
         }
+        unchangedChunksSkipped.incrementAndGet();
+        return true;
+    }
 
-        Minecraft minecraft = Minecraft.getInstance();
-        BlockColors blockColors = minecraft.getBlockColors();
-        BlockModelShaper modelShaper = minecraft.getBlockRenderer().getBlockModelShaper();
+    /**
+     * Which chunks of a tile have been drawn, answered from metadata without decoding the tile
+     *
+     * @return one bit per chunk (index chunkZ * 32 + chunkX, in chunks within the tile), or null if unknown
+     */
+    public static long[] getRenderedChunks(int tileX, int tileZ) {
+        ChunkMetadata metadata = metadataFor(tileX, tileZ);
+        return metadata == null ? null : metadata.getRenderedBits();
+    }
 
-        int startChunkX = (tileX * TILE_SIZE) >> 4;
-        int startChunkZ = (tileZ * TILE_SIZE) >> 4;
-        int endChunkX = ((tileX * TILE_SIZE) + TILE_SIZE - 1) >> 4;
-        int endChunkZ = ((tileZ * TILE_SIZE) + TILE_SIZE - 1) >> 4;
+    /**
+     * @return epoch milliseconds a chunk was last drawn, or 0 if it never was
+     */
+    public static long getChunkRenderedAt(int chunkX, int chunkZ) {
+        ChunkMetadata metadata = metadataFor(getTileX(chunkX << 4), getTileZ(chunkZ << 4));
+        return metadata == null ? 0 : metadata.getRenderedAt(Math.floorMod(chunkX, CHUNKS_PER_TILE), Math.floorMod(chunkZ, CHUNKS_PER_TILE));
+    }
 
-        int chunksUpdated = 0;
+    /**
+     * @return number of chunk updates skipped because the chunk's surface had not changed
+     */
+    public static long getUnchangedChunksSkipped() {
+        return unchangedChunksSkipped.get();
+    }
 
-        for (int chunkX = startChunkX; chunkX <= endChunkX; chunkX++) {
-            for (int chunkZ = startChunkZ; chunkZ <= endChunkZ; chunkZ++) {
-                if (!level.hasChunk(chunkX, chunkZ)) {
-                    continue;
-                }
+    /**
+     * Queue a tile for generation. Its loaded chunks are captured on the client thread a budget per
+     * tick (see {@link #tickTileCaptures}), then rendered on the render pool, one column of chunks
+     * per subtask, so a full tile uses every worker
+     *
+     * @return completes once the tile has been drawn, or once it turns out no chunk needs drawing
+     */
+    public static CompletableFuture<Void> generateAndSaveTile(Level level, int tileX, int tileZ) {
+        TileCapture capture = new TileCapture(level, tileX, tileZ, session.get(), loadMetadataAsync(tileX, tileZ));
+        captures.add(capture);
+        return capture.result;
+    }
 
-                LevelChunk chunk = level.getChunk(chunkX, chunkZ);
-                renderChunkToTile(level, chunk, tileX, tileZ, tileImage, blockColors, modelShaper);
-                chunksUpdated++;
+    /**
+     * Capture the next chunks of the tiles waiting to be generated, at most the configured number per
+     * tick, and hand each tile to the render pool once all its chunks are captured. Client thread only.
+     */
+    public static void tickTileCaptures(Level level) {
+        int budget = CartographicaConfig.TILE_CAPTURE_CHUNKS_PER_TICK.get();
+        Iterator<TileCapture> iterator = captures.iterator();
+        while (iterator.hasNext() && budget > 0) {
+            TileCapture capture = iterator.next();
+            if (capture.level != level || capture.session != session.get()) {
+                iterator.remove();
+                capture.result.complete(null);
+                continue;
+            }
+            if (!capture.metadata.isDone()) {
+                continue;
             }
-        }
 
-        if (chunksUpdated > 0) {
-            String key = tileX + "_" + tileZ;
-            tileCache.put(key, tileImage);
-            saveTile(tileX, tileZ, tileImage);
-            Cartographica.LOGGER.info("Generated tile {}_{} with {} chunks", tileX, tileZ, chunksUpdated);
+            budget -= capture.captureNext(budget);
+            if (capture.isCaptured()) {
+                iterator.remove();
+                renderCapturedTile(capture);
+            }
         }
     }
 
-    private static void renderChunkToTile(Level level, LevelChunk chunk, int tileX, int tileZ,
-                                          BufferedImage tileImage, BlockColors blockColors,
-                                          BlockModelShaper modelShaper) {
-        ChunkPos chunkPos = chunk.getPos();
-        int chunkWorldX = chunkPos.x << 4;
-        int chunkWorldZ = chunkPos.z << 4;
+    private static CompletableFuture<ChunkMetadata> loadMetadataAsync(int tileX, int tileZ) {
+        try {
+            // Metadata only counts for a tile that loads; a missing or unreadable one is drawn from scratch
+            return CompletableFuture.supplyAsync(() -> loadTile(tileX, tileZ) == null ? null : metadataFor(tileX, tileZ), ioExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 
-        for (int dx = 0; dx < 16; dx++) {
-            for (int dz = 0; dz < 16; dz++) {
-                int worldX = chunkWorldX + dx;
-                int worldZ = chunkWorldZ + dz;
+    private static void renderCapturedTile(TileCapture capture) {
+        List<ChunkSnapshot> snapshots = capture.snapshots;
+        int tileX = capture.tileX;
+        int tileZ = capture.tileZ;
+        int started = capture.session;
+        if (snapshots.isEmpty()) {
+            capture.result.complete(null);
+            return;
+        }
 
-                int tileLocalX = worldX - (tileX * TILE_SIZE);
-                int tileLocalZ = worldZ - (tileZ * TILE_SIZE);
+        ExecutorService executor = renderExecutor();
+        try {
+            CompletableFuture.supplyAsync(() -> callInSession(started, () -> loadOrCreateTile(tileX, tileZ)), executor)
+                    .thenCompose(pixels -> {
+                        CompletableFuture<Void> drawn = pixels == null ? null
+                                : callInSession(started, () -> generateTile(executor, started, snapshots, tileX, tileZ, pixels));
+                        return drawn != null ? drawn : CompletableFuture.<Void>completedFuture(null);
+                    })
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            Cartographica.LOGGER.error("Error generating tile: {}", e.getMessage());
+                        }
+                        capture.result.complete(null);
+                    });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            capture.result.complete(null);
+        }
+    }
 
-                if (tileLocalX < 0 || tileLocalX >= TILE_SIZE ||
-                        tileLocalZ < 0 || tileLocalZ >= TILE_SIZE) {
-                    continue;
+    /**
+     * Fork one subtask per column of chunks and mark the tile dirty once all have merged into it,
+     * if any chunk was actually drawn
+     */
+    private static CompletableFuture<Void> generateTile(ExecutorService executor, int started, List<ChunkSnapshot> snapshots,
+                                                        int tileX, int tileZ, int[] pixels) {
+        BlockColors blockColors = Minecraft.getInstance().getBlockColors();
+        ChunkMetadata metadata = metadataFor(tileX, tileZ);
+        AtomicInteger drawn = new AtomicInteger();
+
+        List<CompletableFuture<Void>> subtasks = new ArrayList<>();
+        for (int start = 0; start < snapshots.size(); start += CHUNKS_PER_TASK) {
+            List<ChunkSnapshot> batch = snapshots.subList(start, Math.min(start + CHUNKS_PER_TASK, snapshots.size()));
+            subtasks.add(CompletableFuture.runAsync(() -> runInSession(started, () -> {
+                for (ChunkSnapshot snapshot : batch) {
+                    long hash = snapshot.contentHash();
+                    if (!isUnchanged(metadata, snapshot, hash)) {
+                        renderChunkToTile(snapshot, tileX, tileZ, pixels, blockColors, metadata, hash);
+                        drawn.incrementAndGet();
+                    }
                 }
+            }), executor));
+        }
+
+        return CompletableFuture.allOf(subtasks.toArray(CompletableFuture[]::new)).thenRun(() -> runInSession(started, () -> {
+            // Every chunk unchanged: the stored tile is already current
+            if (drawn.get() > 0) {
+                markTileDirty(tileX, tileZ, pixels);
+            }
+            Cartographica.LOGGER.info("Generated tile {}_{}: drew {} of {} chunks", tileX, tileZ, drawn.get(), snapshots.size());
+        }));
+    }
 
-                int worldY = level.getHeight(Heightmap.Types.WORLD_SURFACE, worldX, worldZ) - 1;
-                worldY = Math.max(level.getMinBuildHeight(), Math.min(worldY, level.getMaxBuildHeight()));
+    /**
+     * Color the chunk into a private buffer, then copy it into the tile under the tile's lock,
+     * so chunks of one tile can be colored in parallel
+     *
+     * @param metadata where the draw is recorded, or null
+     * @param hash     the snapshot's content hash
+     */
+    private static void renderChunkToTile(ChunkSnapshot snapshot, int tileX, int tileZ, int[] pixels,
+                                          BlockColors blockColors, ChunkMetadata metadata, long hash) {
+        long start = System.nanoTime();
+        int[] chunkPixels = CHUNK_PIXELS.get();
+        ChunkRasterizer.renderChunk(snapshot, chunkPixels, blockColors);
 
-                BlockPos pos = new BlockPos(worldX, worldY, worldZ);
-                BlockState blockState = level.getBlockState(pos);
+        // Chunks never straddle tiles, so every column lands inside this one
+        int tileOriginX = (snapshot.getChunkX() << 4) - (tileX * TILE_SIZE);
+        int tileOriginZ = (snapshot.getChunkZ() << 4) - (tileZ * TILE_SIZE);
 
-                int color = getBlockColor(blockColors, modelShaper, level, pos, blockState);
-                tileImage.setRGB(tileLocalX, tileLocalZ, color);
+        synchronized (pixels) {
+            for (int dz = 0; dz < 16; dz++) {
+                System.arraycopy(chunkPixels, dz * 16, pixels, (tileOriginZ + dz) * TILE_SIZE + tileOriginX, 16);
+            }
+            // Under the tile's lock, so a save sees both the pixels and their record or neither
+            if (metadata != null) {
+                metadata.record(tileOriginX >> 4, tileOriginZ >> 4, hash, System.currentTimeMillis());
             }
         }
+        PipelineMetrics.CHUNK_RENDER.recordSince(start);
+        tileLayerWriter.add(tileX, tileZ, snapshot);
+
+        notifyChunkChanged(tileX, tileZ, snapshot);
     }
 
     /**
-     * Get block color using Minecraft's ACTUAL texture - NO MODIFICATIONS!
+     * Recompute a tile's colors from its stored layers, without touching the world, e.g. after the
+     * block colors changed. Columns without layer data keep their pixels. Runs on the calling thread.
+     *
+     * @return false if the tile has no stored layers or no world is loaded
      */
-    private static int getBlockColor(BlockColors blockColors, BlockModelShaper modelShaper,
-                                     Level level, BlockPos pos, BlockState blockState) {
-        if (blockState.isAir()) {
-            return 0x00000000;
+    public static boolean recolorTile(int tileX, int tileZ) {
+        TileRegionStore store = layerStore;
+        Level level = Minecraft.getInstance().level;
+        if (store == null || level == null) {
+            return false;
         }
 
+        TileLayers layers;
         try {
-            // Get texture color
-            BakedModel model = modelShaper.getBlockModel(blockState);
-            TextureAtlasSprite sprite = model.getParticleIcon();
-            int textureColor = sampleSpriteAverage(sprite);
-
-            // Apply biome tint if Minecraft wants it
-            int tintColor = blockColors.getColor(blockState, level, pos, 0);
-            if (tintColor != -1 && tintColor != 0xFFFFFF) {
-                textureColor = multiplyColors(textureColor, tintColor);
+            if (!store.exists(tileX, tileZ)) {
+                return false;
             }
+            layers = TileLayerWriter.read(store, tileX, tileZ);
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to read layers of tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            return false;
+        }
+        tileLayerWriter.applyPending(layers, tileX, tileZ);
+
+        Registry<Biome> biomes = level.registryAccess().registryOrThrow(Registries.BIOME);
+        BitSet resolved = new BitSet(TILE_SIZE * TILE_SIZE);
+        int[] colors = TileRecolorer.recolor(layers, biomes, Minecraft.getInstance().getBlockColors(),
+                ChunkRasterizer.tintGetter(level.getMinBuildHeight(), level.getHeight()),
+                tileX * TILE_SIZE, tileZ * TILE_SIZE, resolved);
+
+        int[] pixels = loadOrCreateTile(tileX, tileZ);
+        synchronized (pixels) {
+            for (int i = resolved.nextSetBit(0); i >= 0; i = resolved.nextSetBit(i + 1)) {
+                pixels[i] = colors[i];
+            }
+        }
 
-            // Brighten to compensate for lack of 3D lighting
-            textureColor = brightenColor(textureColor, 1.15f);
-
-            return 0xFF000000 | textureColor;
+        for (int chunkZ = 0; chunkZ < CHUNKS_PER_TILE; chunkZ++) {
+            for (int chunkX = 0; chunkX < CHUNKS_PER_TILE; chunkX++) {
+                for (TileChangeListener listener : changeListeners) {
+                    listener.onChunkChanged(tileX, tileZ, chunkX, chunkZ);
+                }
+            }
+        }
+        markTileDirty(tileX, tileZ, pixels);
+        return true;
+    }
 
-        } catch (Exception e) {
-            return 0xFF888888;
+    /**
+     * Recolor one tile on the render pool
+     *
+     * @param wanted checked on the worker right before recoloring, so a cancelled request costs nothing
+     * @return completes with whether the tile was recolored
+     */
+    public static CompletableFuture<Boolean> recolorTileAsync(int tileX, int tileZ, BooleanSupplier wanted) {
+        int started = session.get();
+        try {
+            return CompletableFuture.supplyAsync(() -> Boolean.TRUE.equals(callInSession(started,
+                    () -> wanted.getAsBoolean() && recolorTile(tileX, tileZ))), renderExecutor());
+        } catch (RejectedExecutionException e) {
+            // Pool replaced or shutting down
+            return CompletableFuture.completedFuture(false);
         }
     }
 
     /**
-     * Sample texture color - just read the pixels!
+     * List the tiles with stored layers on the IO threads
+     *
+     * @return completes with the keys of the tiles {@link #recolorTile} can recolor
      */
-    private static int sampleSpriteAverage(TextureAtlasSprite sprite) {
+    public static CompletableFuture<LongList> listRecolorableTiles() {
         try {
-            int width = sprite.contents().width();
-            int height = sprite.contents().height();
+            return CompletableFuture.supplyAsync(TileManager::recolorableTiles, ioExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(new LongArrayList());
+        }
+    }
 
-            if (width == 0 || height == 0) {
-                return 0x888888;
-            }
+    private static LongList recolorableTiles() {
+        LongList tiles = new LongArrayList();
+        TileRegionStore store = layerStore;
+        if (store == null) {
+            return tiles;
+        }
 
-            long totalR = 0;
-            long totalG = 0;
-            long totalB = 0;
-            int validSamples = 0;
-
-            // Sample a 4x4 grid across the texture
-            for (int sy = 0; sy < 4; sy++) {
-                for (int sx = 0; sx < 4; sx++) {
-                    // Calculate sample position
-                    int x = (width * sx) / 4 + width / 8;
-                    int y = (height * sy) / 4 + height / 8;
-
-                    // Clamp to bounds
-                    if (x >= width) x = width - 1;
-                    if (y >= height) y = height - 1;
-
-                    // Read pixel color (ABGR format)
-                    int rgba = sprite.getPixelRGBA(0, x, y);
-
-                    // Extract color channels
-                    int a = (rgba >> 24) & 0xFF;  // Alpha
-                    int b = (rgba >> 16) & 0xFF;  // Blue
-                    int g = (rgba >> 8) & 0xFF;   // Green
-                    int r = rgba & 0xFF;          // Red
-
-                    // Skip transparent pixels (they're not part of the block!)
-                    if (a < 128) {
-                        continue;
-                    }
+        try {
+            store.forEachTile((tileX, tileZ) -> tiles.add(tileKey(tileX, tileZ)));
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to list tile layers: {}", e.getMessage());
+        }
+        return tiles;
+    }
 
-                    // Add to total
-                    totalR += r;
-                    totalG += g;
-                    totalB += b;
-                    validSamples++;
-                }
-            }
+    private static void saveTile(TileRegionStore store, int tileX, int tileZ, int[] live) {
+        ChunkMetadataStore metadata = chunkMetadata;
+        if (metadata != null && !metadata.getDirectory().equals(store.getDirectory())) {
+            metadata = null;
+        }
 
-            // If no valid samples, return gray
-            if (validSamples == 0) {
-                return 0x888888;
+        // Pixels and metadata are copied under one lock, so the saved metadata describes exactly the saved pixels
+        int[] abgr;
+        byte[] metadataData = null;
+        synchronized (live) {
+            abgr = live.clone();
+            if (metadata != null) {
+                metadataData = metadata.snapshot(tileX, tileZ);
             }
+        }
 
-            // Calculate average color
-            int avgR = (int) (totalR / validSamples);
-            int avgG = (int) (totalG / validSamples);
-            int avgB = (int) (totalB / validSamples);
+        try {
+            long start = System.nanoTime();
+            byte[] data = TileCodec.encode(abgr, TILE_SIZE, TILE_SIZE);
+            PipelineMetrics.TILE_ENCODE.recordSince(start);
+
+            store.write(tileX, tileZ, data);
+            PipelineMetrics.TILE_SAVES.increment();
+            PipelineMetrics.SAVE_BYTES.add(data.length);
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to save tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            return;
+        }
 
-            return (avgR << 16) | (avgG << 8) | avgB;
+        TileIndex index = tileIndex;
+        if (index != null && store == tileStore) {
+            index.add(tileX, tileZ);
+        }
 
-        } catch (Exception e) {
-            Cartographica.LOGGER.error("Error sampling sprite: {}", e.getMessage());
-            return 0x888888;
+        TileRegionStore layers = layerStore;
+        if (layers != null && layers.getDirectory().equals(store.getDirectory())) {
+            try {
+                tileLayerWriter.flush(layers, tileX, tileZ);
+            } catch (IOException e) {
+                Cartographica.LOGGER.error("Failed to save layers of tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            }
         }
-    }
 
-    private static int brightenColor(int color, float factor) {
-        int r = (color >> 16) & 0xFF;
-        int g = (color >> 8) & 0xFF;
-        int b = color & 0xFF;
+        // After the pixels, so metadata never claims a chunk the saved tile does not show
+        if (metadataData != null) {
+            try {
+                metadata.write(tileX, tileZ, metadataData);
+            } catch (IOException e) {
+                Cartographica.LOGGER.error("Failed to save chunk metadata for tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            }
+        }
 
-        // Apply brightness factor
-        r = Math.min(255, (int)(r * factor));
-        g = Math.min(255, (int)(g * factor));
-        b = Math.min(255, (int)(b * factor));
+        TileLodPyramid lod = tileLod;
+        if (lod == null || lod.getBaseStore() != store) {
+            return;
+        }
 
-        return (r << 16) | (g << 8) | b;
+        // The writer thread hands off, so a slow pyramid update never delays other saves
+        lodExecutor.execute(() -> {
+            try {
+                lod.update(tileX, tileZ, abgr);
+                for (int level = 1; level <= TileLodPyramid.MAX_LEVEL; level++) {
+                    notifyLodTileChanged(level, TileLodPyramid.lodCoord(tileX, level), TileLodPyramid.lodCoord(tileZ, level));
+                }
+            } catch (IOException e) {
+                Cartographica.LOGGER.error("Failed to update LOD tiles for {}_{}: {}", tileX, tileZ, e.getMessage());
+            }
+        });
     }
 
     /**
-     * Standard multiply for biome tinting
+     * Read a downsampled tile; level 0 is the base tile.
+     * A missing level tile is built in the background from the levels below it,
+     * once per session, so worlds mapped before the pyramid existed fill in as they are viewed.
+     *
+     * @return ABGR pixels, or null if the tile does not exist (yet)
      */
-    private static int multiplyColors(int textureColor, int tintColor) {
-        int tr = (textureColor >> 16) & 0xFF;
-        int tg = (textureColor >> 8) & 0xFF;
-        int tb = textureColor & 0xFF;
+    public static int[] loadLodTile(int level, int x, int z) {
+        TileLodPyramid lod = tileLod;
+        if (lod == null) {
+            return null;
+        }
 
-        int br = (tintColor >> 16) & 0xFF;
-        int bg = (tintColor >> 8) & 0xFF;
-        int bb = tintColor & 0xFF;
+        try {
+            long start = System.nanoTime();
+            int[] pixels = lod.read(level, x, z);
+            PipelineMetrics.LOD_LOAD.recordSince(start);
+            if (pixels == null && level > 0) {
+                requestLodBuild(lod, level, x, z);
+            }
+            return pixels;
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to load LOD {} tile {}_{}: {}", level, x, z, e.getMessage());
+            return null;
+        }
+    }
 
-        int r = (tr * br) / 255;
-        int g = (tg * bg) / 255;
-        int b = (tb * bb) / 255;
+    private static void requestLodBuild(TileLodPyramid lod, int level, int x, int z) {
+        long key = lodTileKey(level, x, z);
+        synchronized (lodBuildsRequested) {
+            if (!lodBuildsRequested.add(key)) {
+                return;
+            }
+        }
 
-        return (r << 16) | (g << 8) | b;
+        lodExecutor.execute(() -> {
+            if (tileLod != lod) {
+                return;
+            }
+            try {
+                if (lod.build(level, x, z) != null) {
+                    notifyLodTileChanged(level, x, z);
+                }
+            } catch (IOException e) {
+                Cartographica.LOGGER.error("Failed to build LOD {} tile {}_{}: {}", level, x, z, e.getMessage());
+            }
+        });
     }
 
-    private static void saveTile(int tileX, int tileZ, BufferedImage image) {
-        if (tileDirectory == null) {
-            return;
+    /**
+     * Export a tile as a PNG file, e.g. for sharing. Tiles are never stored as PNG.
+     */
+    public static boolean exportTilePng(int tileX, int tileZ, File target) {
+        int[] pixels = loadTile(tileX, tileZ);
+        if (pixels == null) {
+            return false;
         }
 
-        File tileFile = new File(tileDirectory, tileX + "_" + tileZ + ".png");
+        int[] abgr;
+        synchronized (pixels) {
+            abgr = pixels.clone();
+        }
 
-        try {
-            ImageIO.write(image, "png", tileFile);
+        try (OutputStream out = new FileOutputStream(target)) {
+            TileCodec.writePng(abgr, TILE_SIZE, TILE_SIZE, out);
+            return true;
         } catch (IOException e) {
-            Cartographica.LOGGER.error("Failed to save tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            Cartographica.LOGGER.error("Failed to export tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            return false;
         }
     }
 
     public static void invalidateTile(int tileX, int tileZ) {
-        String key = tileX + "_" + tileZ;
-        tileCache.remove(key);
+        tileCache.remove(tileKey(tileX, tileZ));
+    }
+
+    /**
+     * A tile's loaded chunks, captured a few at a time on the client thread
+     */
+    private static final class TileCapture {
+        final Level level;
+        final int tileX;
+        final int tileZ;
+        final int session;
+        final CompletableFuture<ChunkMetadata> metadata;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final List<ChunkSnapshot> snapshots = new ArrayList<>();
+        // Next chunk to look at, localZ * CHUNKS_PER_TILE + localX
+        int next;
+
+        TileCapture(Level level, int tileX, int tileZ, int session, CompletableFuture<ChunkMetadata> metadata) {
+            this.level = level;
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+            this.session = session;
+            this.metadata = metadata;
+        }
+
+        /**
+         * @return number of chunks captured, at most the budget
+         */
+        int captureNext(int budget) {
+            ChunkMetadata known = metadata.getNow(null);
+            int captured = 0;
+            while (next < CHUNKS_PER_TILE * CHUNKS_PER_TILE && captured < budget) {
+                int localX = next % CHUNKS_PER_TILE;
+                int localZ = next / CHUNKS_PER_TILE;
+                next++;
+
+                // A drawn chunk was hash-checked when it loaded and is redrawn by its change events
+                if (known != null && known.isRendered(localX, localZ)) {
+                    continue;
+                }
+                int chunkX = tileX * CHUNKS_PER_TILE + localX;
+                int chunkZ = tileZ * CHUNKS_PER_TILE + localZ;
+                if (!level.hasChunk(chunkX, chunkZ)) {
+                    continue;
+                }
+
+                snapshots.add(ChunkSnapshot.capture(level.getChunk(chunkX, chunkZ)));
+                captured++;
+            }
+            return captured;
+        }
+
+        boolean isCaptured() {
+            return next >= CHUNKS_PER_TILE * CHUNKS_PER_TILE;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,167 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.config.CartographicaConfig;
+import net.minecraft.world.entity.player.Player;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+/**
+ * Warms the tile cache and texture pool along the path the player is moving on,
+ * so the minimap edge is already drawn when a fast player (elytra, boat on ice) gets there.
+ * <p>
+ * Velocity and heading come from the player's smoothed movement between ticks,
+ * which covers riding as well as flying. Tiles on the projected path are read on the
+ * I/O executor, then uploaded a few per tick once they are in memory.
+ * Client thread only.
+ */
+public class TilePrefetcher {
+
+    // Weight of the newest tick in the smoothed velocity
+    private static final double SMOOTHING = 0.3;
+    // Movement per tick above this is a teleport, not travel
+    private static final double MAX_STEP_SQ = 100.0 * 100.0;
+    // Distance between samples on the projected path, in blocks
+    private static final int SAMPLE_STEP = 64;
+    // Below this lookahead distance the renderers already have everything nearby
+    private static final double MIN_DISTANCE = TileManager.TILE_SIZE / 4.0;
+    // Texture uploads per tick, so prefetching never causes a frame spike
+    private static final int MAX_UPLOADS_PER_TICK = 2;
+    private static final int MAX_PATH_TILES = 32;
+    // How long before a tile that was read (and possibly found missing) is read again
+    private static final long RETRY_MS = 2000;
+
+    private static final Long2LongMap requestedAt = new Long2LongOpenHashMap();
+    private static final LongSet path = new LongLinkedOpenHashSet();
+
+    private static boolean tracking;
+    private static double lastX;
+    private static double lastZ;
+    private static double velocityX;
+    private static double velocityZ;
+
+    private static long requested;
+
+    /**
+     * Forget the player's movement and past requests, e.g. on world or dimension change
+     */
+    public static void reset() {
+        tracking = false;
+        velocityX = 0;
+        velocityZ = 0;
+        requestedAt.clear();
+        path.clear();
+    }
+
+    public static void tick(Player player) {
+        double x = player.getX();
+        double z = player.getZ();
+        if (!tracking) {
+            tracking = true;
+            lastX = x;
+            lastZ = z;
+            return;
+        }
+
+        double dx = x - lastX;
+        double dz = z - lastZ;
+        lastX = x;
+        lastZ = z;
+        if (dx * dx + dz * dz > MAX_STEP_SQ) {
+            velocityX = 0;
+            velocityZ = 0;
+            return;
+        }
+        velocityX += (dx - velocityX) * SMOOTHING;
+        velocityZ += (dz - velocityZ) * SMOOTHING;
+
+        double speed = Math.sqrt(velocityX * velocityX + velocityZ * velocityZ);
+        double distance = speed * CartographicaConfig.PREFETCH_LOOKAHEAD_SECONDS.get() * 20.0;
+        if (distance < MIN_DISTANCE) {
+            return;
+        }
+
+        // Half the minimap's view, so the whole minimap is covered around every point on the path
+        double margin = CartographicaConfig.MINIMAP_SIZE.get() / CartographicaConfig.MINIMAP_ZOOM.get() / 2.0;
+        collectPath(x, z, velocityX / speed, velocityZ / speed, distance, margin);
+        prefetchPath();
+    }
+
+    /**
+     * Tiles covering the projected path, nearest first
+     */
+    private static void collectPath(double x, double z, double headingX, double headingZ, double distance, double margin) {
+        path.clear();
+        for (double travelled = 0; travelled <= distance + SAMPLE_STEP - 1; travelled += SAMPLE_STEP) {
+            double along = Math.min(travelled, distance);
+            double px = x + headingX * along;
+            double pz = z + headingZ * along;
+
+            int minTileX = TileManager.getTileX((int) Math.floor(px - margin));
+            int maxTileX = TileManager.getTileX((int) Math.floor(px + margin));
+            int minTileZ = TileManager.getTileZ((int) Math.floor(pz - margin));
+            int maxTileZ = TileManager.getTileZ((int) Math.floor(pz + margin));
+
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                for (int tileZ = minTileZ; tileZ <= maxTileZ; tileZ++) {
+                    path.add(TileManager.tileKey(tileX, tileZ));
+                    if (path.size() >= MAX_PATH_TILES) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void prefetchPath() {
+        long now = System.currentTimeMillis();
+        int uploads = 0;
+
+        LongIterator iterator = path.iterator();
+        while (iterator.hasNext()) {
+            long key = iterator.nextLong();
+            if (TileTextureService.isResident(key)) {
+                continue;
+            }
+
+            int tileX = TileManager.tileKeyX(key);
+            int tileZ = TileManager.tileKeyZ(key);
+            if (TileManager.peekTile(tileX, tileZ) != null) {
+                if (uploads < MAX_UPLOADS_PER_TICK && TileTextureService.prefetch(tileX, tileZ)) {
+                    uploads++;
+                }
+                continue;
+            }
+
+            if (now - requestedAt.get(key) < RETRY_MS) {
+                continue;
+            }
+            requestedAt.put(key, now);
+            requested++;
+            TileManager.loadTileAsync(0, tileX, tileZ);
+        }
+
+        if (requestedAt.size() > 256) {
+            requestedAt.long2LongEntrySet().removeIf(entry -> now - entry.getLongValue() >= RETRY_MS);
+        }
+    }
+
+    /**
+     * @return number of tiles read ahead of the player
+     */
+    public static long getRequested() {
+        return requested;
+    }
+
+    /**
+     * @return share of prefetched textures that were drawn before being evicted, 0 to 1
+     */
+    public static double getHitRate() {
+        long hits = TileTextureService.getPrefetchHits();
+        long settled = hits + TileTextureService.getPrefetchWasted();
+        return settled == 0 ? 0.0 : (double) hits / settled;
+    }
+}
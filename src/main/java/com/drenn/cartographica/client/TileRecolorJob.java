@@ -0,0 +1,223 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.Cartographica;
+import com.drenn.cartographica.config.CartographicaConfig;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recolors the stored tiles from their layers when the block color table changes, e.g. after a
+ * resource pack switch. Unchanged chunks are never drawn again, so without this old colors would
+ * stay. Tiles go nearest to the player first, paced by a rate, with as many in parallel as the
+ * memory budget allows. The colors the tiles were drawn with are remembered in the tile directory,
+ * so a change made while the game was closed is caught on the next join.
+ * Client thread only, except for completions.
+ */
+public final class TileRecolorJob {
+
+    private static final String FINGERPRINT_FILE = "colors.fingerprint";
+    // Decoded layers take 6 bytes per column, the recolored pixels 4
+    private static final long BYTES_PER_TILE = (long) TileManager.TILE_SIZE * TileManager.TILE_SIZE * 10;
+
+    private static Path directory;
+    // Colors the stored tiles were drawn with, and the last table fingerprint compared against them
+    private static long storedFingerprint;
+    private static long checkedFingerprint;
+    // Colors of the recolor in progress, 0 if none
+    private static long targetFingerprint;
+
+    private static CompletableFuture<LongList> listing;
+    // Sorted furthest first, so the nearest tile is taken from the end
+    private static final LongArrayList queue = new LongArrayList();
+    private static int sortedForX;
+    private static int sortedForZ;
+    private static final List<CompletableFuture<Boolean>> inFlight = new ArrayList<>();
+    private static double tokens;
+    private static int total;
+    private static final AtomicInteger completed = new AtomicInteger();
+    private static final AtomicInteger failed = new AtomicInteger();
+    // Bumped on stop; tiles of a stopped job are skipped on the worker and their completions not counted
+    private static volatile int session;
+
+    private TileRecolorJob() {
+    }
+
+    /**
+     * Begin watching the block colors for the tiles in this directory; call after the world's stores are open
+     */
+    public static void start(Path tileDirectory) {
+        stop();
+        directory = tileDirectory;
+        checkedFingerprint = 0;
+
+        Long stored = readFingerprint(tileDirectory);
+        if (stored == null) {
+            // Unknown colors; assume the current ones rather than recolor every tile on first use
+            storedFingerprint = BlockColorTable.getFingerprint();
+            writeFingerprint(tileDirectory, storedFingerprint);
+        } else {
+            storedFingerprint = stored;
+        }
+    }
+
+    /**
+     * Start a recolor if the block colors changed, and dispatch the nearest tiles the rate and memory budget allow
+     */
+    public static void tick(int playerTileX, int playerTileZ) {
+        if (directory == null) {
+            return;
+        }
+
+        long fingerprint = BlockColorTable.getFingerprint();
+        if (fingerprint != checkedFingerprint) {
+            checkedFingerprint = fingerprint;
+            if (fingerprint != storedFingerprint) {
+                begin(fingerprint);
+            }
+        }
+
+        if (listing != null) {
+            if (!listing.isDone()) {
+                return;
+            }
+            LongList tiles = listing.getNow(new LongArrayList());
+            listing = null;
+            queue.addAll(tiles);
+            total = tiles.size();
+            sortedForX = Integer.MIN_VALUE;
+            Cartographica.LOGGER.info("Block colors changed, recoloring {} tiles", total);
+        }
+
+        inFlight.removeIf(CompletableFuture::isDone);
+        if (queue.isEmpty()) {
+            if (targetFingerprint != 0 && inFlight.isEmpty()) {
+                finish();
+            }
+            tokens = 0;
+            return;
+        }
+
+        if (playerTileX != sortedForX || playerTileZ != sortedForZ) {
+            sortedForX = playerTileX;
+            sortedForZ = playerTileZ;
+            queue.sort((LongComparator) (a, b) -> Long.compare(distance(b, playerTileX, playerTileZ), distance(a, playerTileX, playerTileZ)));
+        }
+
+        int maxInFlight = (int) Math.max(1, CartographicaConfig.RECOLOR_MEMORY_MB.get() * 1024L * 1024L / BYTES_PER_TILE);
+        tokens = Math.min(tokens + CartographicaConfig.RECOLOR_RATE.get() / 20.0, maxInFlight);
+        while (tokens >= 1 && !queue.isEmpty() && inFlight.size() < maxInFlight) {
+            long key = queue.removeLong(queue.size() - 1);
+            tokens--;
+            dispatch(key);
+        }
+    }
+
+    private static void begin(long fingerprint) {
+        // A change during a running recolor restarts it with the newest colors
+        queue.clear();
+        total = 0;
+        completed.set(0);
+        failed.set(0);
+        targetFingerprint = fingerprint;
+        listing = TileManager.listRecolorableTiles();
+        MinimapRenderer.invalidateComposite();
+    }
+
+    private static void dispatch(long key) {
+        int dispatchSession = session;
+        CompletableFuture<Boolean> recolor = TileManager.recolorTileAsync(TileManager.tileKeyX(key), TileManager.tileKeyZ(key),
+                () -> dispatchSession == session);
+        recolor.whenComplete((result, error) -> {
+            if (error != null) {
+                Cartographica.LOGGER.error("Failed to recolor tile {}_{}: {}",
+                        TileManager.tileKeyX(key), TileManager.tileKeyZ(key), error.getMessage());
+            }
+            if (dispatchSession == session) {
+                completed.incrementAndGet();
+                if (error != null || !Boolean.TRUE.equals(result)) {
+                    failed.incrementAndGet();
+                }
+            }
+        });
+        inFlight.add(recolor);
+    }
+
+    /**
+     * Remember the new colors only if every tile was recolored; otherwise the stored colors stay
+     * and the whole recolor runs again on the next join
+     */
+    private static void finish() {
+        int failedTiles = failed.get();
+        if (failedTiles == 0) {
+            storedFingerprint = targetFingerprint;
+            writeFingerprint(directory, storedFingerprint);
+            Cartographica.LOGGER.info("Recolored {} tiles", completed.get());
+        } else {
+            Cartographica.LOGGER.warn("Failed to recolor {} of {} tiles, will retry on the next join",
+                    failedTiles, completed.get());
+        }
+        targetFingerprint = 0;
+        total = 0;
+    }
+
+    /**
+     * Drop the remaining tiles without waiting: tiles already queued on the render pool see the new
+     * session and skip themselves, and one already running is waited for by TileManager.unload().
+     * An unfinished recolor starts over on the next join, as the stored colors were not updated.
+     */
+    public static void stop() {
+        session++;
+        queue.clear();
+        listing = null;
+        inFlight.clear();
+        total = 0;
+        tokens = 0;
+        targetFingerprint = 0;
+        directory = null;
+    }
+
+    public static boolean isRunning() {
+        return targetFingerprint != 0;
+    }
+
+    /**
+     * @return share of the current recolor done, 0 to 1
+     */
+    public static double getProgress() {
+        return total == 0 ? 0.0 : Math.min(1.0, completed.get() / (double) total);
+    }
+
+    private static long distance(long key, int playerTileX, int playerTileZ) {
+        long dx = TileManager.tileKeyX(key) - playerTileX;
+        long dz = TileManager.tileKeyZ(key) - playerTileZ;
+        return dx * dx + dz * dz;
+    }
+
+    private static Long readFingerprint(Path tileDirectory) {
+        Path file = tileDirectory.resolve(FINGERPRINT_FILE);
+        try {
+            return Files.exists(file) ? Long.parseUnsignedLong(Files.readString(file).trim(), 16) : null;
+        } catch (IOException | NumberFormatException e) {
+            Cartographica.LOGGER.warn("Unreadable block color fingerprint, tiles will be recolored: {}", e.getMessage());
+            return 0L;
+        }
+    }
+
+    private static void writeFingerprint(Path tileDirectory, long fingerprint) {
+        try {
+            Files.writeString(tileDirectory.resolve(FINGERPRINT_FILE), Long.toHexString(fingerprint));
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to save block color fingerprint: {}", e.getMessage());
+        }
+    }
+}
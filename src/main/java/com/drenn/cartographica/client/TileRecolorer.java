@@ -0,0 +1,60 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.storage.TileLayers;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.world.level.biome.Biome;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Derives tile colors from stored {@link TileLayers}: a CPU-only pass over saved data,
+ * so a change in coloring never needs the world to be visited again.
+ */
+public final class TileRecolorer {
+
+    private TileRecolorer() {
+    }
+
+    /**
+     * @param originX world X of the tile's first column
+     * @param originZ world Z of the tile's first column
+     * @param resolved receives the columns that were given a color; the others (unmapped, or a
+     *                 block that no longer exists) should keep whatever the tile already shows
+     * @return ABGR pixels, only meaningful where {@code resolved} is set
+     */
+    public static int[] recolor(TileLayers layers, Registry<Biome> biomes, BlockColors blockColors,
+                                ColumnTintGetter tintGetter, int originX, int originZ, BitSet resolved) {
+        // Resolve each palette once per tile, not once per column
+        List<String> blockNames = layers.getBlockPalette();
+        int[] stateIds = new int[blockNames.size()];
+        for (int i = 1; i < stateIds.length; i++) {
+            stateIds[i] = LayerNames.stateId(blockNames.get(i));
+        }
+
+        List<String> biomeNames = layers.getBiomePalette();
+        Biome[] biomeByIndex = new Biome[biomeNames.size()];
+        for (int i = 1; i < biomeByIndex.length; i++) {
+            biomeByIndex[i] = LayerNames.biome(biomes, biomeNames.get(i));
+        }
+
+        int size = layers.getSize();
+        int[] pixels = new int[size * size];
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        for (int index = 0; index < pixels.length; index++) {
+            int block = layers.getBlockIndex(index);
+            if (block == 0 || stateIds[block] < 0) {
+                continue;
+            }
+
+            pixels[index] = ChunkRasterizer.columnColor(blockColors, tintGetter, pos,
+                    originX + index % size, layers.getHeight(index), originZ + index / size,
+                    stateIds[block], biomeByIndex[layers.getBiomeIndex(index)], layers.getWaterDepth(index));
+            resolved.set(index);
+        }
+        return pixels;
+    }
+}
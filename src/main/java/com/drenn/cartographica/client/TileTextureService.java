@@ -0,0 +1,673 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.Cartographica;
+import com.drenn.cartographica.storage.TileLodPyramid;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.resources.ResourceLocation;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tile textures shared by the minimap and the fullscreen map.
+ * <p>
+ * Each renderer draws through its own {@link View}, which holds a reference on every
+ * tile it drew last frame. Referenced textures are never evicted; unreferenced ones
+ * stay on the GPU, so the other renderer or a reopened screen can use them without
+ * uploading again, until the pool needs their slot. The pool keeps at most the
+ * configured number of textures, growing past it only while more tiles than that are
+ * referenced at once. Slots are reused by age plus distance from the player.
+ * <p>
+ * Drawing never waits for disk: a tile that is not in memory is loaded on the I/O
+ * executor, and until it arrives the closest coarser level already on the GPU
+ * stands in for it, or nothing is drawn.
+ * Render thread only, except for the change notifications and load completions.
+ */
+public final class TileTextureService {
+
+    // A slot one tile further away counts as this many acquisitions older
+    private static final long DISTANCE_WEIGHT = 64;
+    // How long a tile found missing is not asked for again
+    private static final long MISSING_RETRY_MS = 1000;
+    // How long a finished load waits to be picked up before it is dropped
+    private static final long LOADED_RETENTION_MS = 2000;
+
+    private static final Long2ObjectMap<Slot> byTile = new Long2ObjectOpenHashMap<>();
+    private static final List<Slot> slots = new ArrayList<>();
+    private static final DirtyChunkTracker dirtyChunks = new DirtyChunkTracker();
+    // Level tiles rewritten by the pyramid since they were uploaded; written from the LOD thread
+    private static final LongSet staleLodTiles = new LongOpenHashSet();
+    // Finished background loads, keyed by LOD tile key; written from the I/O executor
+    private static final Long2ObjectMap<Loaded> loaded = new Long2ObjectOpenHashMap<>();
+    private static final LongSet loading = new LongOpenHashSet();
+    private static final Long2LongMap missingUntil = new Long2LongOpenHashMap();
+
+    private static int capacity = 64;
+    private static int generation;
+    private static int nextSlotId;
+    private static long clock;
+    private static int focusX;
+    private static int focusZ;
+
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    private static long asyncLoads;
+    private static long placeholders;
+    private static long prefetched;
+    private static long prefetchHits;
+    private static long prefetchWasted;
+
+    static {
+        TileManager.addChangeListener(dirtyChunks);
+        TileManager.addChangeListener(new TileManager.TileChangeListener() {
+            @Override
+            public void onChunkChanged(int tileX, int tileZ, int chunkX, int chunkZ) {
+            }
+
+            @Override
+            public void onLodTileChanged(int level, int x, int z) {
+                synchronized (staleLodTiles) {
+                    staleLodTiles.add(TileManager.lodTileKey(level, x, z));
+                }
+            }
+        });
+    }
+
+    private TileTextureService() {
+    }
+
+    public static View createView() {
+        return new View();
+    }
+
+    /**
+     * Tell the pool where the player is, so far-away textures are reused first
+     */
+    public static void setFocus(int tileX, int tileZ) {
+        focusX = tileX;
+        focusZ = tileZ;
+    }
+
+    /**
+     * Change the number of textures kept. Extra unreferenced textures are released.
+     */
+    public static void setCapacity(int newCapacity) {
+        capacity = newCapacity;
+        trim();
+    }
+
+    /**
+     * Forget every tile, e.g. on dimension change. Textures are kept for reuse,
+     * and views drop their references on their next frame.
+     */
+    public static void clear() {
+        for (Slot slot : slots) {
+            slot.assigned = false;
+            slot.prefetched = false;
+            slot.references = 0;
+        }
+        byTile.clear();
+        dirtyChunks.clear();
+        synchronized (staleLodTiles) {
+            staleLodTiles.clear();
+        }
+        synchronized (loaded) {
+            loaded.clear();
+        }
+        loading.clear();
+        missingUntil.clear();
+        generation++;
+        // The minimap's cached image shows the textures just dropped
+        MinimapRenderer.invalidateComposite();
+    }
+
+    /**
+     * Reference a tile's texture, uploading it if its pixels are already in memory.
+     * Never touches disk: tiles that are not in memory are loaded in the background.
+     *
+     * @return the slot, or null if the tile is not available yet
+     */
+    private static Slot retain(long key, int level, int tileX, int tileZ) {
+        Slot slot = byTile.get(key);
+        if (slot != null) {
+            hits++;
+            if (slot.prefetched) {
+                slot.prefetched = false;
+                prefetchHits++;
+            }
+            slot.references++;
+            slot.lastUsed = ++clock;
+            refresh(slot);
+            return slot;
+        }
+
+        int[] pixels = pixelsFor(key, level, tileX, tileZ);
+        if (pixels == null) {
+            return null;
+        }
+
+        misses++;
+
+        slot = findSlot(true);
+        upload(slot, key, level, tileX, tileZ, pixels);
+        return slot;
+    }
+
+    /**
+     * Upload a base tile the player is about to see, if its pixels are in memory.
+     * The texture is not referenced, and the pool never grows for it.
+     *
+     * @return whether a texture was uploaded
+     */
+    public static boolean prefetch(int tileX, int tileZ) {
+        long key = TileManager.tileKey(tileX, tileZ);
+        if (byTile.containsKey(key)) {
+            return false;
+        }
+
+        int[] pixels = TileManager.peekTile(tileX, tileZ);
+        if (pixels == null) {
+            return false;
+        }
+
+        Slot slot = findSlot(false);
+        if (slot == null) {
+            return false;
+        }
+
+        upload(slot, key, 0, tileX, tileZ, pixels);
+        slot.references = 0;
+        slot.prefetched = true;
+        prefetched++;
+        return true;
+    }
+
+    /**
+     * @return whether a texture holds the tile, i.e. drawing it would not need an upload
+     */
+    public static boolean isResident(long key) {
+        return byTile.containsKey(key);
+    }
+
+    private static void upload(Slot slot, long key, int level, int tileX, int tileZ, int[] pixels) {
+        if (level == 0) {
+            // Track before copying, so chunks drawn during the copy are uploaded next frame
+            dirtyChunks.watch(key);
+        }
+
+        if (slot.texture == null) {
+            slot.texture = TileTextureUpdater.create(pixels);
+            Minecraft.getInstance().getTextureManager().register(slot.location, slot.texture);
+        } else {
+            if (slot.assigned) {
+                unassign(slot);
+                evictions++;
+            }
+            TileTextureUpdater.replace(slot.texture, pixels);
+        }
+
+        if (!slot.pooled) {
+            slots.add(slot);
+            slot.pooled = true;
+        }
+
+        slot.assign(key, level, tileX, tileZ, ++clock);
+        byTile.put(key, slot);
+        MetricsPanel.onTextureUpload();
+    }
+
+    /**
+     * Pixels already in memory, or the result of a finished background load.
+     * Otherwise starts a load, unless one is running or the tile was recently found missing.
+     */
+    private static int[] pixelsFor(long key, int level, int tileX, int tileZ) {
+        int[] pixels = level == 0 ? TileManager.peekTile(tileX, tileZ) : TileManager.peekLodTile(level, tileX, tileZ);
+        if (pixels != null) {
+            return pixels;
+        }
+
+        long now = System.currentTimeMillis();
+
+        Loaded result;
+        synchronized (loaded) {
+            result = loaded.remove(key);
+        }
+        if (result != null && result.generation == generation) {
+            loading.remove(key);
+            if (result.pixels != null) {
+                return result.pixels;
+            }
+            missingUntil.put(key, now + MISSING_RETRY_MS);
+            return null;
+        }
+
+        if (loading.contains(key) || missingUntil.get(key) > now) {
+            return null;
+        }
+
+        loading.add(key);
+        asyncLoads++;
+        int loadGeneration = generation;
+        TileManager.loadTileAsync(level, tileX, tileZ).whenComplete((tile, error) -> {
+            synchronized (loaded) {
+                loaded.put(key, new Loaded(error == null ? tile : null, loadGeneration, System.currentTimeMillis()));
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Bring a referenced texture up to date with changes made since it was uploaded.
+     * Pixels that are no longer in memory are loaded in the background and applied on a later frame.
+     */
+    private static void refresh(Slot slot) {
+        if (slot.level == 0) {
+            long[] dirty = dirtyChunks.take(slot.key);
+            if (dirty == null) {
+                return;
+            }
+
+            int[] pixels = TileManager.peekTile(slot.tileX, slot.tileZ);
+            if (pixels != null) {
+                TileTextureUpdater.uploadDirty(slot.texture, pixels, dirty);
+                MetricsPanel.onTextureUpload();
+            } else {
+                dirtyChunks.restore(slot.key, dirty);
+                TileManager.loadTileAsync(0, slot.tileX, slot.tileZ);
+            }
+            return;
+        }
+
+        boolean stale;
+        synchronized (staleLodTiles) {
+            stale = staleLodTiles.remove(slot.key);
+        }
+        if (!stale) {
+            return;
+        }
+
+        int[] pixels = TileManager.peekLodTile(slot.level, slot.tileX, slot.tileZ);
+        if (pixels != null) {
+            TileTextureUpdater.replace(slot.texture, pixels);
+            MetricsPanel.onTextureUpload();
+        } else {
+            synchronized (staleLodTiles) {
+                staleLodTiles.add(slot.key);
+            }
+            TileManager.loadTileAsync(slot.level, slot.tileX, slot.tileZ);
+        }
+    }
+
+    /**
+     * Drop finished loads nobody picked up and expired missing marks
+     */
+    private static void purgeExpired() {
+        long now = System.currentTimeMillis();
+
+        synchronized (loaded) {
+            if (!loaded.isEmpty()) {
+                var iterator = loaded.long2ObjectEntrySet().iterator();
+                while (iterator.hasNext()) {
+                    var entry = iterator.next();
+                    Loaded result = entry.getValue();
+                    if (result.generation != generation || now - result.time > LOADED_RETENTION_MS) {
+                        iterator.remove();
+                        loading.remove(entry.getLongKey());
+                    }
+                }
+            }
+        }
+
+        if (missingUntil.size() > 256) {
+            missingUntil.long2LongEntrySet().removeIf(entry -> entry.getLongValue() <= now);
+        }
+    }
+
+    private static void release(long key) {
+        Slot slot = byTile.get(key);
+        if (slot != null && slot.references > 0) {
+            slot.references--;
+            if (slot.references == 0 && slots.size() > capacity) {
+                trim();
+            }
+        }
+    }
+
+    /**
+     * An unassigned slot, a new one while under capacity, otherwise the best eviction victim.
+     * New slots join the pool once they hold a texture.
+     *
+     * @param grow whether to add a slot past capacity when nothing can be evicted
+     * @return the slot, or null if nothing can be evicted and growing is not allowed
+     */
+    private static Slot findSlot(boolean grow) {
+        for (Slot slot : slots) {
+            if (!slot.assigned) {
+                return slot;
+            }
+        }
+
+        if (slots.size() >= capacity) {
+            Slot victim = findVictim();
+            if (victim != null || !grow) {
+                return victim;
+            }
+        }
+
+        return new Slot(ResourceLocation.fromNamespaceAndPath(Cartographica.MOD_ID, "tile_texture_" + nextSlotId++));
+    }
+
+    private static Slot findVictim() {
+        Slot victim = null;
+        long victimScore = -1;
+
+        for (Slot slot : slots) {
+            if (slot.references > 0) {
+                continue;
+            }
+
+            long score = (clock - slot.lastUsed) + slot.distanceFrom(focusX, focusZ) * DISTANCE_WEIGHT;
+            if (score > victimScore) {
+                victimScore = score;
+                victim = slot;
+            }
+        }
+
+        return victim;
+    }
+
+    /**
+     * Release unreferenced textures until the pool is back within capacity
+     */
+    private static void trim() {
+        while (slots.size() > capacity) {
+            Slot slot = null;
+            for (Slot candidate : slots) {
+                if (!candidate.assigned) {
+                    slot = candidate;
+                    break;
+                }
+            }
+            if (slot == null) {
+                slot = findVictim();
+            }
+            if (slot == null) {
+                // Everything left is referenced; shrink once some of it is released
+                return;
+            }
+
+            if (slot.assigned) {
+                unassign(slot);
+            }
+            // Unregisters and closes the texture
+            Minecraft.getInstance().getTextureManager().release(slot.location);
+            slots.remove(slot);
+        }
+    }
+
+    private static void unassign(Slot slot) {
+        if (slot.prefetched) {
+            slot.prefetched = false;
+            prefetchWasted++;
+        }
+        byTile.remove(slot.key);
+        if (slot.level == 0) {
+            dirtyChunks.unwatch(slot.key);
+        }
+        slot.assigned = false;
+        slot.references = 0;
+    }
+
+    public static int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of textures on the GPU, assigned or not
+     */
+    public static int getAllocated() {
+        return slots.size();
+    }
+
+    /**
+     * @return number of textures currently holding a tile
+     */
+    public static int getOccupied() {
+        return byTile.size();
+    }
+
+    /**
+     * @return number of textures some view is drawing
+     */
+    public static int getReferenced() {
+        int referenced = 0;
+        for (Slot slot : slots) {
+            if (slot.references > 0) {
+                referenced++;
+            }
+        }
+        return referenced;
+    }
+
+    public static long getHits() {
+        return hits;
+    }
+
+    public static long getMisses() {
+        return misses;
+    }
+
+    public static long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of tiles requested from the I/O executor
+     */
+    public static long getAsyncLoads() {
+        return asyncLoads;
+    }
+
+    /**
+     * @return number of times a coarser tile was drawn while the real one loaded
+     */
+    public static long getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * @return number of textures uploaded ahead of the player
+     */
+    public static long getPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * @return number of prefetched textures that were drawn before being evicted
+     */
+    public static long getPrefetchHits() {
+        return prefetchHits;
+    }
+
+    /**
+     * @return number of prefetched textures evicted without ever being drawn
+     */
+    public static long getPrefetchWasted() {
+        return prefetchWasted;
+    }
+
+    /**
+     * Part of a texture to draw: the whole tile, or the quadrant of a coarser tile standing in for it
+     */
+    public static final class Region {
+        public final ResourceLocation location;
+        public final float u;
+        public final float v;
+        public final int size;
+        // A coarser tile standing in while the tile itself loads
+        public final boolean placeholder;
+
+        Region(ResourceLocation location, float u, float v, int size, boolean placeholder) {
+            this.location = location;
+            this.u = u;
+            this.v = v;
+            this.size = size;
+            this.placeholder = placeholder;
+        }
+    }
+
+    /**
+     * One renderer's references. Call {@link #beginFrame}, {@link #acquire} every tile
+     * drawn, then {@link #endFrame}; tiles not drawn this frame are released.
+     */
+    public static final class View {
+        private final LongSet held = new LongOpenHashSet();
+        private final LongSet drawn = new LongOpenHashSet();
+        private int viewGeneration = generation;
+
+        private View() {
+        }
+
+        public void beginFrame() {
+            purgeExpired();
+            if (viewGeneration != generation) {
+                // The pool was cleared; our references went with it
+                held.clear();
+                viewGeneration = generation;
+            }
+            drawn.clear();
+        }
+
+        /**
+         * @param level LOD level, 0 for base tiles
+         * @return what to draw for the tile, or null if it does not exist or nothing can stand in yet
+         */
+        public Region acquire(int level, int tileX, int tileZ) {
+            long key = TileManager.lodTileKey(level, tileX, tileZ);
+
+            Slot slot = held.contains(key) ? byTile.get(key) : null;
+            if (slot != null) {
+                drawn.add(key);
+                refresh(slot);
+                slot.lastUsed = ++clock;
+                return slot.region;
+            }
+
+            slot = retain(key, level, tileX, tileZ);
+            if (slot != null) {
+                held.add(key);
+                drawn.add(key);
+                return slot.region;
+            }
+
+            // Still loading: stand in with the closest coarser tile already on the GPU
+            for (int up = 1; level + up <= TileLodPyramid.MAX_LEVEL; up++) {
+                long ancestorKey = TileManager.lodTileKey(level + up, tileX >> up, tileZ >> up);
+                Slot ancestor = byTile.get(ancestorKey);
+                if (ancestor == null) {
+                    continue;
+                }
+
+                if (held.add(ancestorKey)) {
+                    ancestor.references++;
+                }
+                drawn.add(ancestorKey);
+                ancestor.lastUsed = ++clock;
+                placeholders++;
+
+                int size = TileManager.TILE_SIZE >> up;
+                int mask = (1 << up) - 1;
+                return new Region(ancestor.location, (tileX & mask) * size, (tileZ & mask) * size, size, true);
+            }
+            return null;
+        }
+
+        public void endFrame() {
+            LongIterator iterator = held.iterator();
+            while (iterator.hasNext()) {
+                long key = iterator.nextLong();
+                if (!drawn.contains(key)) {
+                    iterator.remove();
+                    release(key);
+                }
+            }
+        }
+
+        /**
+         * Drop every reference, e.g. when a screen closes. The textures stay cached.
+         */
+        public void releaseAll() {
+            if (viewGeneration == generation) {
+                LongIterator iterator = held.iterator();
+                while (iterator.hasNext()) {
+                    release(iterator.nextLong());
+                }
+            }
+            held.clear();
+            drawn.clear();
+        }
+    }
+
+    private static class Slot {
+        final ResourceLocation location;
+        final Region region;
+        DynamicTexture texture;
+        boolean pooled;
+        // Uploaded by the prefetcher and not drawn yet
+        boolean prefetched;
+        boolean assigned;
+        int references;
+        long key;
+        int level;
+        int tileX;
+        int tileZ;
+        long lastUsed;
+
+        Slot(ResourceLocation location) {
+            this.location = location;
+            this.region = new Region(location, 0.0F, 0.0F, TileManager.TILE_SIZE, false);
+        }
+
+        void assign(long key, int level, int tileX, int tileZ, long time) {
+            this.assigned = true;
+            this.references = 1;
+            this.key = key;
+            this.level = level;
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+            this.lastUsed = time;
+        }
+
+        /**
+         * Chebyshev distance in base tiles from the focus to the area this slot covers
+         */
+        long distanceFrom(int baseX, int baseZ) {
+            int span = 1 << level;
+            long dx = Math.max(0, Math.max(tileX * span - baseX, baseX - (tileX * span + span - 1)));
+            long dz = Math.max(0, Math.max(tileZ * span - baseZ, baseZ - (tileZ * span + span - 1)));
+            return Math.max(dx, dz);
+        }
+    }
+
+    private static class Loaded {
+        final int[] pixels;
+        final int generation;
+        final long time;
+
+        Loaded(int[] pixels, int generation, long time) {
+            this.pixels = pixels;
+            this.generation = generation;
+            this.time = time;
+        }
+    }
+}
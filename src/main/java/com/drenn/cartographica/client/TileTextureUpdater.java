@@ -0,0 +1,87 @@
+package com.drenn.cartographica.client;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+
+/**
+ * Copies tile pixels into textures, either whole or only the chunks that changed.
+ * Tiles are already ABGR, the layout of an RGBA NativeImage, so every copy is a
+ * bulk copy straight into the image's native buffer.
+ */
+public final class TileTextureUpdater {
+
+    private static final int PIXELS = TileManager.TILE_SIZE * TileManager.TILE_SIZE;
+
+    private TileTextureUpdater() {
+    }
+
+    /**
+     * Create a texture holding the full tile
+     */
+    public static DynamicTexture create(int[] abgr) {
+        NativeImage nativeImage = new NativeImage(TileManager.TILE_SIZE, TileManager.TILE_SIZE, false);
+        copyAll(abgr, nativeImage);
+        return new DynamicTexture(nativeImage);
+    }
+
+    /**
+     * Overwrite an existing texture with another tile, reusing its GPU storage. Must run on the render thread.
+     */
+    public static void replace(DynamicTexture texture, int[] abgr) {
+        NativeImage nativeImage = texture.getPixels();
+        if (nativeImage == null) {
+            return;
+        }
+
+        copyAll(abgr, nativeImage);
+        texture.upload();
+    }
+
+    /**
+     * Re-upload only the dirty chunk areas of an existing texture. Must run on the render thread.
+     *
+     * @param dirty chunk bits from {@link DirtyChunkTracker#take}
+     */
+    public static void uploadDirty(DynamicTexture texture, int[] abgr, long[] dirty) {
+        NativeImage nativeImage = texture.getPixels();
+        if (nativeImage == null) {
+            return;
+        }
+
+        IntBuffer target = pixelBuffer(nativeImage);
+        texture.bind();
+        synchronized (abgr) {
+            DirtyChunkTracker.forEachRun(dirty, (chunkX, chunkZ, length) -> {
+                int x = chunkX * 16;
+                int y = chunkZ * 16;
+                int width = length * 16;
+
+                for (int row = y; row < y + 16; row++) {
+                    int offset = row * TileManager.TILE_SIZE + x;
+                    target.put(offset, abgr, offset, width);
+                }
+                nativeImage.upload(0, x, y, x, y, width, 16, false, false);
+            });
+        }
+    }
+
+    static void copyAll(int[] abgr, NativeImage nativeImage) {
+        IntBuffer target = pixelBuffer(nativeImage);
+        synchronized (abgr) {
+            target.put(0, abgr, 0, PIXELS);
+        }
+    }
+
+    /**
+     * View of the image's native pixel memory, one int per ABGR pixel
+     */
+    private static IntBuffer pixelBuffer(NativeImage nativeImage) {
+        if (nativeImage.format() != NativeImage.Format.RGBA || nativeImage.pixels == 0L) {
+            throw new IllegalStateException("Tile textures must be open RGBA images");
+        }
+        return MemoryUtil.memIntBuffer(nativeImage.pixels, PIXELS);
+    }
+}
@@ -0,0 +1,288 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.Cartographica;
+import com.drenn.cartographica.storage.TileRegionStore;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind stage for tile persistence. Chunk updates only mark a tile dirty;
+ * the tile is written once it has been quiet for a while or has waited too long,
+ * so many updates to the same tile collapse into a single write.
+ */
+public class TileWriter {
+
+    private static final long POLL_INTERVAL_MS = 250;
+
+    public interface Sink {
+        /**
+         * @param pixels the live ABGR tile; copy it under its lock before encoding, so workers
+         *               can keep drawing meanwhile and anything copied alongside matches it
+         */
+        void write(TileRegionStore store, int tileX, int tileZ, int[] pixels) throws Exception;
+    }
+
+    public interface WrittenListener {
+        void onWritten(long key);
+    }
+
+    private final Long2ObjectMap<PendingWrite> pending = new Long2ObjectOpenHashMap<>();
+    private final Object ioLock = new Object();
+    // Writes taken out of pending but not finished yet; guarded by pending
+    private int inFlight;
+    // Bumped when a drain gives up; older writes are dropped instead of reaching closed stores. Written under both locks
+    private int generation;
+    private final Sink sink;
+    private final WrittenListener writtenListener;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long quietPeriodMs;
+    private volatile long maxDelayMs;
+
+    private final AtomicLong requestedWrites = new AtomicLong();
+    private final AtomicLong completedWrites = new AtomicLong();
+
+    public TileWriter(Sink sink, WrittenListener writtenListener, long quietPeriodMs, long maxDelayMs) {
+        this.sink = sink;
+        this.writtenListener = writtenListener;
+        this.quietPeriodMs = quietPeriodMs;
+        this.maxDelayMs = maxDelayMs;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Cartographica Tile Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushDue, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void setDelays(long quietPeriodMs, long maxDelayMs) {
+        this.quietPeriodMs = quietPeriodMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Record that a tile changed. Repeated calls before the write happens are coalesced.
+     */
+    public void markDirty(TileRegionStore store, long key, int[] pixels) {
+        long now = System.currentTimeMillis();
+        requestedWrites.incrementAndGet();
+
+        PendingWrite displaced = null;
+        synchronized (pending) {
+            PendingWrite write = pending.get(key);
+            if (write == null || write.store != store) {
+                if (write != null) {
+                    displaced = write;
+                    inFlight++;
+                }
+                pending.put(key, new PendingWrite(store, pixels, now, generation));
+            } else {
+                write.pixels = pixels;
+                write.lastDirty = now;
+            }
+        }
+
+        if (displaced != null) {
+            // Store changed underneath us; write the old one out right away
+            scheduleImmediate(key, displaced);
+        }
+    }
+
+    /**
+     * Pixels waiting to be written for this tile, so readers never see stale disk data
+     */
+    public int[] getPending(TileRegionStore store, long key) {
+        synchronized (pending) {
+            PendingWrite write = pending.get(key);
+            return write != null && write.store == store ? write.pixels : null;
+        }
+    }
+
+    /**
+     * Write a tile as soon as possible instead of waiting for its quiet period
+     */
+    public void expedite(long key) {
+        synchronized (pending) {
+            PendingWrite write = pending.get(key);
+            if (write != null) {
+                write.expedited = true;
+            }
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.execute(this::flushDue);
+        }
+    }
+
+    public int getBacklog() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getRequestedWrites() {
+        return requestedWrites.get();
+    }
+
+    public long getCompletedWrites() {
+        return completedWrites.get();
+    }
+
+    private void flushDue() {
+        long now = System.currentTimeMillis();
+        LongList due = new LongArrayList();
+
+        synchronized (pending) {
+            for (Long2ObjectMap.Entry<PendingWrite> entry : pending.long2ObjectEntrySet()) {
+                PendingWrite write = entry.getValue();
+                if (write.expedited
+                        || now - write.lastDirty >= quietPeriodMs
+                        || now - write.firstDirty >= maxDelayMs) {
+                    due.add(entry.getLongKey());
+                }
+            }
+        }
+
+        for (int i = 0; i < due.size(); i++) {
+            long key = due.getLong(i);
+            PendingWrite write;
+            synchronized (pending) {
+                write = pending.remove(key);
+                if (write != null) {
+                    inFlight++;
+                }
+            }
+            if (write != null) {
+                write(key, write);
+            }
+        }
+    }
+
+    private void scheduleImmediate(long key, PendingWrite write) {
+        if (scheduler.isShutdown()) {
+            write(key, write);
+        } else {
+            scheduler.execute(() -> write(key, write));
+        }
+    }
+
+    /**
+     * Write a tile that has been taken out of pending and counted in flight
+     */
+    private void write(long key, PendingWrite write) {
+        boolean written = false;
+        // One write at a time, so an older snapshot can never land after a newer one
+        synchronized (ioLock) {
+            if (write.generation == generation) {
+                try {
+                    sink.write(write.store, TileManager.tileKeyX(key), TileManager.tileKeyZ(key), write.pixels);
+                    completedWrites.incrementAndGet();
+                    written = true;
+                } catch (Exception e) {
+                    Cartographica.LOGGER.error("Failed to write tile {}_{}: {}",
+                            TileManager.tileKeyX(key), TileManager.tileKeyZ(key), e.getMessage());
+                }
+            }
+        }
+
+        boolean redirtied;
+        synchronized (pending) {
+            redirtied = pending.containsKey(key);
+            inFlight--;
+            pending.notifyAll();
+        }
+        if (written && !redirtied) {
+            writtenListener.onWritten(key);
+        }
+    }
+
+    /**
+     * Write everything still pending, including writes the writer thread already started,
+     * giving up after the timeout. Once this returns no write reaches a store that was
+     * dirtied before the call, so the caller may close the stores.
+     *
+     * @return number of tiles that could not be written in time
+     */
+    public int drain(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        while (true) {
+            long key;
+            PendingWrite write;
+            synchronized (pending) {
+                long remainingMs = deadline - System.currentTimeMillis();
+                if (pending.isEmpty()) {
+                    if (inFlight == 0) {
+                        return 0;
+                    }
+                    if (remainingMs <= 0) {
+                        break;
+                    }
+                    try {
+                        pending.wait(remainingMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    continue;
+                }
+                if (remainingMs <= 0) {
+                    break;
+                }
+                key = pending.keySet().iterator().nextLong();
+                write = pending.remove(key);
+                inFlight++;
+            }
+            write(key, write);
+        }
+
+        return discardRemaining();
+    }
+
+    /**
+     * Let a write already inside the sink finish, then drop everything else
+     */
+    private int discardRemaining() {
+        synchronized (ioLock) {
+            synchronized (pending) {
+                int remaining = pending.size() + inFlight;
+                pending.clear();
+                generation++;
+                Cartographica.LOGGER.warn("Tile write drain timed out with {} tiles unsaved", remaining);
+                return remaining;
+            }
+        }
+    }
+
+    /**
+     * Drain pending writes and stop the writer thread
+     */
+    public void shutdown(long timeoutMs) {
+        scheduler.shutdown();
+        drain(timeoutMs);
+    }
+
+    private static class PendingWrite {
+        final TileRegionStore store;
+        final long firstDirty;
+        final int generation;
+        int[] pixels;
+        long lastDirty;
+        boolean expedited;
+
+        PendingWrite(TileRegionStore store, int[] pixels, long now, int generation) {
+            this.store = store;
+            this.generation = generation;
+            this.pixels = pixels;
+            this.firstDirty = now;
+            this.lastDirty = now;
+        }
+    }
+}
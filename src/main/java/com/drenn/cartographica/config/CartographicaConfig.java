@@ -21,6 +21,7 @@ public class CartographicaConfig {
     public static final ModConfigSpec.BooleanValue SHOW_TIME;
     public static final ModConfigSpec.BooleanValue SHOW_BIOME;
     public static final ModConfigSpec.BooleanValue SHOW_FPS;
+    public static final ModConfigSpec.BooleanValue SHOW_DEBUG_PANEL;
 
     // Minimap Border
     public static final ModConfigSpec.BooleanValue SHOW_BORDER;
@@ -32,6 +33,22 @@ public class CartographicaConfig {
     public static final ModConfigSpec.ConfigValue<Integer> PLAYER_MARKER_COLOR;
     public static final ModConfigSpec.IntValue PLAYER_MARKER_SIZE;
 
+    // Performance
+    public static final ModConfigSpec.IntValue TILE_CACHE_BUDGET_MB;
+    public static final ModConfigSpec.IntValue SAVE_QUIET_PERIOD_MS;
+    public static final ModConfigSpec.IntValue SAVE_MAX_DELAY_MS;
+    public static final ModConfigSpec.IntValue SAVE_DRAIN_TIMEOUT_MS;
+    public static final ModConfigSpec.IntValue MAX_PENDING_CHUNK_UPDATES;
+    public static final ModConfigSpec.IntValue TILE_TEXTURE_POOL_SIZE;
+    public static final ModConfigSpec.DoubleValue PREFETCH_LOOKAHEAD_SECONDS;
+    public static final ModConfigSpec.DoubleValue TILE_GENERATION_RATE;
+    public static final ModConfigSpec.IntValue TILE_GENERATION_CONCURRENCY;
+    public static final ModConfigSpec.IntValue TILE_CAPTURE_CHUNKS_PER_TICK;
+    public static final ModConfigSpec.EnumValue<WorkerPoolType> RENDER_POOL_TYPE;
+    public static final ModConfigSpec.IntValue RENDER_THREADS;
+    public static final ModConfigSpec.DoubleValue RECOLOR_RATE;
+    public static final ModConfigSpec.IntValue RECOLOR_MEMORY_MB;
+
     static {
         BUILDER.push("Minimap Settings");
 
@@ -83,6 +100,10 @@ public class CartographicaConfig {
                 .comment("Show FPS counter")
                 .define("showFPS", false);
 
+        SHOW_DEBUG_PANEL = BUILDER
+                .comment("Show map pipeline metrics (render times, queues, cache) beside the minimap")
+                .define("showDebugPanel", false);
+
         BUILDER.pop();
 
         BUILDER.push("Minimap Border");
@@ -117,6 +138,66 @@ public class CartographicaConfig {
 
         BUILDER.pop();
 
+        BUILDER.push("Performance");
+
+        TILE_CACHE_BUDGET_MB = BUILDER
+                .comment("Memory budget for map tiles kept in RAM, in megabytes (each tile is about 1 MB)")
+                .defineInRange("tileCacheBudgetMB", 128, 16, 4096);
+
+        SAVE_QUIET_PERIOD_MS = BUILDER
+                .comment("Write a changed tile once it has had no updates for this long, in milliseconds")
+                .defineInRange("saveQuietPeriodMs", 5000, 250, 60000);
+
+        SAVE_MAX_DELAY_MS = BUILDER
+                .comment("Never keep a changed tile unsaved for longer than this, in milliseconds")
+                .defineInRange("saveMaxDelayMs", 30000, 1000, 600000);
+
+        SAVE_DRAIN_TIMEOUT_MS = BUILDER
+                .comment("How long to wait for unsaved tiles on dimension change or exit, in milliseconds")
+                .defineInRange("saveDrainTimeoutMs", 10000, 500, 120000);
+
+        MAX_PENDING_CHUNK_UPDATES = BUILDER
+                .comment("Maximum chunk updates waiting to be drawn; further updates are dropped until the queue drains")
+                .defineInRange("maxPendingChunkUpdates", 4096, 64, 65536);
+
+        TILE_TEXTURE_POOL_SIZE = BUILDER
+                .comment("Number of tile textures the minimap and map screen keep on the GPU (1 MB each); the least useful is reused when full")
+                .defineInRange("tileTexturePoolSize", 64, 16, 1024);
+
+        PREFETCH_LOOKAHEAD_SECONDS = BUILDER
+                .comment("Load tiles along the path the player will cover in this many seconds at their current speed (0 disables prefetching)")
+                .defineInRange("prefetchLookaheadSeconds", 4.0, 0.0, 30.0);
+
+        TILE_GENERATION_RATE = BUILDER
+                .comment("Missing tiles around the player started per second")
+                .defineInRange("tileGenerationRate", 1.0, 0.1, 20.0);
+
+        TILE_GENERATION_CONCURRENCY = BUILDER
+                .comment("Missing tiles generated at the same time")
+                .defineInRange("tileGenerationConcurrency", 2, 1, 8);
+
+        TILE_CAPTURE_CHUNKS_PER_TICK = BUILDER
+                .comment("Chunks copied per game tick for tiles being generated (and again for chunk updates dropped from a full queue); lower values spread the work over more frames")
+                .defineInRange("tileCaptureChunksPerTick", 64, 1, 1024);
+
+        RENDER_POOL_TYPE = BUILDER
+                .comment("Threads that draw chunks into tiles: PLATFORM, VIRTUAL or WORK_STEALING (applied on world join)")
+                .defineEnum("renderPoolType", WorkerPoolType.PLATFORM);
+
+        RENDER_THREADS = BUILDER
+                .comment("Number of render threads, 0 for one per CPU core but one (not used by VIRTUAL)")
+                .defineInRange("renderThreads", 0, 0, 64);
+
+        RECOLOR_RATE = BUILDER
+                .comment("Stored tiles recolored per second after the block colors change, e.g. a resource pack switch")
+                .defineInRange("recolorRate", 8.0, 0.5, 200.0);
+
+        RECOLOR_MEMORY_MB = BUILDER
+                .comment("Memory for tiles being recolored at the same time, in MB; bounds how many run in parallel")
+                .defineInRange("recolorMemoryMB", 32, 4, 512);
+
+        BUILDER.pop();
+
         SPEC = BUILDER.build();
     }
 
@@ -133,6 +214,12 @@ public class CartographicaConfig {
         BOTTOM_RIGHT
     }
 
+    public enum WorkerPoolType {
+        PLATFORM,
+        VIRTUAL,
+        WORK_STEALING
+    }
+
     public enum PlayerMarkerType {
         ARROW,
         DOT,
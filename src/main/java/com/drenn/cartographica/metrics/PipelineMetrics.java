@@ -0,0 +1,212 @@
+package com.drenn.cartographica.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters, gauges and latency histograms for the map pipeline, cheap enough to stay on
+ * in release builds. Recording is lock-free; metrics are registered once and kept in
+ * registration order for the debug panel and dumps.
+ */
+public final class PipelineMetrics {
+
+    private static final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    public static final Histogram CHUNK_RENDER = histogram("render.chunk", Unit.NANOS);
+    public static final Histogram TILE_DECODE = histogram("tile.decode", Unit.NANOS);
+    public static final Histogram TILE_ENCODE = histogram("tile.encode", Unit.NANOS);
+    public static final Histogram LOD_LOAD = histogram("tile.load.lod", Unit.NANOS);
+    public static final Counter TILE_SAVES = counter("tile.saves");
+    public static final Counter SAVE_BYTES = counter("tile.save.bytes");
+    public static final Counter TEXTURE_UPLOADS = counter("texture.uploads");
+    public static final Histogram TEXTURE_UPLOADS_PER_FRAME = histogram("texture.uploads.frame", Unit.COUNT);
+
+    private PipelineMetrics() {
+    }
+
+    public enum Unit {
+        NANOS,
+        COUNT
+    }
+
+    public interface Metric {
+        /**
+         * @return the current value(s) as one line of text, without the name
+         */
+        String describe();
+    }
+
+    public static synchronized Counter counter(String name) {
+        return register(name, new Counter());
+    }
+
+    public static synchronized Histogram histogram(String name, Unit unit) {
+        return register(name, new Histogram(unit));
+    }
+
+    /**
+     * Register a value read on demand, e.g. a queue depth. Replaces an earlier gauge of the same name.
+     */
+    public static synchronized void gauge(String name, DoubleSupplier value) {
+        metrics.put(name, new Gauge(value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Metric> T register(String name, T metric) {
+        Metric existing = metrics.putIfAbsent(name, metric);
+        return existing != null ? (T) existing : metric;
+    }
+
+    /**
+     * @return "name: value" lines for every metric, in registration order
+     */
+    public static synchronized List<String> snapshot() {
+        List<String> lines = new ArrayList<>(metrics.size());
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            lines.add(entry.getKey() + ": " + entry.getValue().describe());
+        }
+        return lines;
+    }
+
+    /**
+     * @return one metric's line without the name, or null if it is not registered
+     */
+    public static synchronized String describe(String name) {
+        Metric metric = metrics.get(name);
+        return metric == null ? null : metric.describe();
+    }
+
+    /**
+     * Write every metric to a text file, creating parent directories as needed
+     */
+    public static void dump(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# Cartographica pipeline metrics, " + LocalDateTime.now());
+        lines.addAll(snapshot());
+        Files.createDirectories(file.getParent());
+        Files.write(file, lines);
+    }
+
+    public static final class Counter implements Metric {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        public String describe() {
+            return Long.toString(get());
+        }
+    }
+
+    /**
+     * Distribution in power-of-two buckets; percentiles are reported as their bucket's upper bound
+     */
+    public static final class Histogram implements Metric {
+        // Bucket i holds values below 2^i and at least 2^(i-1); bucket 0 holds 0
+        private static final int BUCKETS = 65;
+
+        private final Unit unit;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(Unit unit) {
+            this.unit = unit;
+        }
+
+        public void record(long value) {
+            long clamped = Math.max(0, value);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(clamped));
+            count.increment();
+            sum.add(clamped);
+            max.accumulateAndGet(clamped, Math::max);
+        }
+
+        /**
+         * Record the time since a {@link System#nanoTime} taken earlier
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMean() {
+            long samples = getCount();
+            return samples == 0 ? 0.0 : (double) sum.sum() / samples;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param quantile 0 to 1
+         */
+        public long getPercentile(double quantile) {
+            long samples = getCount();
+            if (samples == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(quantile * samples));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    long upper = i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upper, getMax());
+                }
+            }
+            return getMax();
+        }
+
+        @Override
+        public String describe() {
+            return String.format("n=%d mean=%s p50=%s p95=%s p99=%s max=%s", getCount(),
+                    format(getMean()), format(getPercentile(0.5)), format(getPercentile(0.95)),
+                    format(getPercentile(0.99)), format(getMax()));
+        }
+
+        private String format(double value) {
+            return unit == Unit.NANOS ? String.format("%.2fms", value / 1_000_000.0) : String.format("%.1f", value);
+        }
+    }
+
+    private static final class Gauge implements Metric {
+        private final DoubleSupplier value;
+
+        Gauge(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public String describe() {
+            double current = value.getAsDouble();
+            return current == Math.rint(current) ? Long.toString((long) current) : String.format("%.3f", current);
+        }
+    }
+}
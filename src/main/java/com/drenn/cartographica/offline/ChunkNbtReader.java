@@ -0,0 +1,185 @@
+package com.drenn.cartographica.offline;
+
+import com.drenn.cartographica.client.ChunkSnapshot;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.material.Fluids;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the same {@link ChunkSnapshot} a live client would capture, from a chunk's saved NBT:
+ * the WORLD_SURFACE heightmap, the block state at each surface column, its biome and water depth.
+ * Thread-safe; palette lookups are shared between threads.
+ */
+public class ChunkNbtReader {
+
+    private static final String FULL_STATUS = "minecraft:full";
+
+    private final Registry<Biome> biomes;
+    private final int minBuildHeight;
+    private final int height;
+    private final int heightmapBits;
+    private final Map<CompoundTag, Integer> stateIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> biomeIds = new ConcurrentHashMap<>();
+
+    /**
+     * @param minBuildHeight lowest block y of the dimension
+     * @param height         block height of the dimension
+     */
+    public ChunkNbtReader(Registry<Biome> biomes, int minBuildHeight, int height) {
+        this.biomes = biomes;
+        this.minBuildHeight = minBuildHeight;
+        this.height = height;
+        this.heightmapBits = Mth.ceillog2(height + 1);
+    }
+
+    /**
+     * @return the chunk's surface, or null if the chunk is not fully generated
+     */
+    public ChunkSnapshot read(CompoundTag chunk) {
+        String status = chunk.getString("Status");
+        if (!status.equals(FULL_STATUS) && !status.equals("full")) {
+            return null;
+        }
+
+        long[] heightmap = chunk.getCompound("Heightmaps").getLongArray("WORLD_SURFACE");
+        if (heightmap.length == 0) {
+            return null;
+        }
+
+        Int2ObjectMap<CompoundTag> sections = new Int2ObjectOpenHashMap<>();
+        ListTag sectionList = chunk.getList("sections", Tag.TAG_COMPOUND);
+        for (int i = 0; i < sectionList.size(); i++) {
+            CompoundTag section = sectionList.getCompound(i);
+            sections.put(section.getByte("Y"), section);
+        }
+        Int2ObjectMap<Section> decoded = new Int2ObjectOpenHashMap<>();
+
+        int[] heights = new int[ChunkSnapshot.COLUMNS];
+        int[] states = new int[ChunkSnapshot.COLUMNS];
+        int[] biomeIdsByColumn = new int[ChunkSnapshot.COLUMNS];
+        byte[] waterDepths = new byte[ChunkSnapshot.COLUMNS];
+        int maxY = minBuildHeight + height - 1;
+
+        for (int dz = 0; dz < 16; dz++) {
+            for (int dx = 0; dx < 16; dx++) {
+                int index = ChunkSnapshot.index(dx, dz);
+
+                // The heightmap holds the first free y above the top block, relative to the bottom
+                int worldY = unpack(heightmap, index, heightmapBits) + minBuildHeight - 1;
+                worldY = Math.max(minBuildHeight, Math.min(worldY, maxY));
+
+                Section surface = section(sections, decoded, worldY >> 4);
+                heights[index] = worldY;
+                states[index] = surface.state(dx, worldY & 15, dz);
+                biomeIdsByColumn[index] = surface.biome(dx >> 2, (worldY & 15) >> 2, dz >> 2);
+
+                int depth = 0;
+                for (int y = worldY; depth < ChunkSnapshot.MAX_WATER_DEPTH && y >= minBuildHeight; y--) {
+                    int stateId = section(sections, decoded, y >> 4).state(dx, y & 15, dz);
+                    if (!Block.stateById(stateId).getFluidState().getType().isSame(Fluids.WATER)) {
+                        break;
+                    }
+                    depth++;
+                }
+                waterDepths[index] = (byte) depth;
+            }
+        }
+
+        return ChunkSnapshot.of(chunk.getInt("xPos"), chunk.getInt("zPos"), minBuildHeight, height,
+                heights, states, biomeIdsByColumn, waterDepths, biomes);
+    }
+
+    private Section section(Int2ObjectMap<CompoundTag> sections, Int2ObjectMap<Section> decoded, int sectionY) {
+        Section section = decoded.get(sectionY);
+        if (section == null) {
+            section = decodeSection(sections.get(sectionY));
+            decoded.put(sectionY, section);
+        }
+        return section;
+    }
+
+    private Section decodeSection(CompoundTag section) {
+        if (section == null) {
+            return Section.EMPTY;
+        }
+
+        CompoundTag blockStates = section.getCompound("block_states");
+        ListTag blockPalette = blockStates.getList("palette", Tag.TAG_COMPOUND);
+        int[] statePalette = new int[Math.max(1, blockPalette.size())];
+        for (int i = 0; i < blockPalette.size(); i++) {
+            statePalette[i] = stateIds.computeIfAbsent(blockPalette.getCompound(i),
+                    tag -> Block.getId(NbtUtils.readBlockState(BuiltInRegistries.BLOCK.asLookup(), tag)));
+        }
+
+        CompoundTag biomeStates = section.getCompound("biomes");
+        ListTag biomePalette = biomeStates.getList("palette", Tag.TAG_STRING);
+        int[] biomePaletteIds = new int[Math.max(1, biomePalette.size())];
+        biomePaletteIds[0] = -1;
+        for (int i = 0; i < biomePalette.size(); i++) {
+            biomePaletteIds[i] = biomeIds.computeIfAbsent(biomePalette.getString(i), this::biomeId);
+        }
+
+        return new Section(statePalette, blockStates.getLongArray("data"), Math.max(4, Mth.ceillog2(statePalette.length)),
+                biomePaletteIds, biomeStates.getLongArray("data"), Mth.ceillog2(biomePaletteIds.length));
+    }
+
+    /**
+     * @return the biome's id in this reader's registry, or -1 for biomes it does not know (e.g. from mods)
+     */
+    private int biomeId(String name) {
+        ResourceLocation location = ResourceLocation.tryParse(name);
+        Biome biome = location == null ? null : biomes.get(location);
+        return biome == null ? -1 : biomes.getId(biome);
+    }
+
+    /**
+     * Entry of a packed array as saved since 1.16: fixed-width values that never straddle two longs
+     */
+    private static int unpack(long[] data, int index, int bits) {
+        int perLong = 64 / bits;
+        int word = index / perLong;
+        if (word >= data.length) {
+            return 0;
+        }
+        return (int) ((data[word] >>> ((index % perLong) * bits)) & ((1L << bits) - 1));
+    }
+
+    /**
+     * Block states and biomes of one 16x16x16 section, still packed
+     */
+    private record Section(int[] statePalette, long[] stateData, int stateBits,
+                           int[] biomePalette, long[] biomeData, int biomeBits) {
+
+        static final Section EMPTY = new Section(new int[]{0}, new long[0], 4, new int[]{-1}, new long[0], 0);
+
+        int state(int x, int y, int z) {
+            if (stateData.length == 0) {
+                return statePalette[0];
+            }
+            int entry = unpack(stateData, (y << 8) | (z << 4) | x, stateBits);
+            return entry < statePalette.length ? statePalette[entry] : 0;
+        }
+
+        int biome(int quartX, int quartY, int quartZ) {
+            if (biomeData.length == 0 || biomeBits == 0) {
+                return biomePalette[0];
+            }
+            int entry = unpack(biomeData, (quartY << 4) | (quartZ << 2) | quartX, biomeBits);
+            return entry < biomePalette.length ? biomePalette[entry] : -1;
+        }
+    }
+}
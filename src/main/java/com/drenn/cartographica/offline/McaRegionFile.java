@@ -0,0 +1,123 @@
+package com.drenn.cartographica.offline;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read-only view of one Anvil region file (r.x.z.mca): 32x32 chunks, each stored as
+ * compressed NBT in 4 KiB sectors. Chunks too large for the file live in a sibling
+ * c.x.z.mcc file. The whole file is read up front; instances are not thread-safe.
+ */
+public class McaRegionFile {
+
+    public static final int CHUNKS_PER_SIDE = 32;
+
+    private static final Pattern NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+    private static final int SECTOR_BYTES = 4096;
+    private static final int EXTERNAL_FLAG = 0x80;
+
+    private static final int COMPRESSION_GZIP = 1;
+    private static final int COMPRESSION_ZLIB = 2;
+    private static final int COMPRESSION_NONE = 3;
+    private static final int COMPRESSION_LZ4 = 4;
+
+    private final Path path;
+    private final int regionX;
+    private final int regionZ;
+    private final ByteBuffer data;
+
+    private McaRegionFile(Path path, int regionX, int regionZ, byte[] data) {
+        this.path = path;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+        this.data = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @return the region, or null if the file name is not a region file name
+     */
+    public static McaRegionFile open(Path path) throws IOException {
+        Matcher matcher = NAME.matcher(path.getFileName().toString());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new McaRegionFile(path, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                Files.readAllBytes(path));
+    }
+
+    public static boolean isRegionFile(Path path) {
+        return NAME.matcher(path.getFileName().toString()).matches();
+    }
+
+    public int getRegionX() {
+        return regionX;
+    }
+
+    public int getRegionZ() {
+        return regionZ;
+    }
+
+    /**
+     * @param localX 0 to 31
+     * @param localZ 0 to 31
+     * @return the chunk's NBT, or null if the chunk was never saved
+     */
+    public CompoundTag readChunk(int localX, int localZ) throws IOException {
+        if (data.capacity() < SECTOR_BYTES) {
+            return null;
+        }
+
+        int location = data.getInt((localZ * CHUNKS_PER_SIDE + localX) * 4);
+        int offset = (location >>> 8) * SECTOR_BYTES;
+        if (location == 0 || offset + 5 > data.capacity()) {
+            return null;
+        }
+
+        int length = data.getInt(offset);
+        int type = data.get(offset + 4) & 0xFF;
+        if (length < 1 || offset + 4 + length > data.capacity()) {
+            throw new IOException("Chunk " + localX + "," + localZ + " of " + path.getFileName() + " is truncated");
+        }
+
+        InputStream raw;
+        if ((type & EXTERNAL_FLAG) != 0) {
+            int chunkX = regionX * CHUNKS_PER_SIDE + localX;
+            int chunkZ = regionZ * CHUNKS_PER_SIDE + localZ;
+            raw = Files.newInputStream(path.resolveSibling("c." + chunkX + "." + chunkZ + ".mcc"));
+            type &= ~EXTERNAL_FLAG;
+        } else {
+            raw = new ByteArrayInputStream(data.array(), offset + 5, length - 1);
+        }
+
+        try (DataInputStream in = new DataInputStream(decompress(raw, type))) {
+            return NbtIo.read(in);
+        }
+    }
+
+    private InputStream decompress(InputStream raw, int type) throws IOException {
+        return switch (type) {
+            case COMPRESSION_GZIP -> new GZIPInputStream(raw);
+            case COMPRESSION_ZLIB -> new InflaterInputStream(raw);
+            case COMPRESSION_NONE -> raw;
+            case COMPRESSION_LZ4 -> new LZ4BlockInputStream(raw);
+            default -> {
+                raw.close();
+                throw new IOException("Unknown chunk compression " + type + " in " + path.getFileName());
+            }
+        };
+    }
+}
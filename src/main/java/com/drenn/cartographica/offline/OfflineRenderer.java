@@ -0,0 +1,279 @@
+package com.drenn.cartographica.offline;
+
+import com.drenn.cartographica.Cartographica;
+import com.drenn.cartographica.client.ChunkRasterizer;
+import com.drenn.cartographica.client.ChunkSnapshot;
+import com.drenn.cartographica.client.TileLayerWriter;
+import com.drenn.cartographica.client.TileManager;
+import com.drenn.cartographica.storage.ChunkMetadata;
+import com.drenn.cartographica.storage.ChunkMetadataStore;
+import com.drenn.cartographica.storage.TileCodec;
+import com.drenn.cartographica.storage.TileRegionStore;
+import com.mojang.serialization.Lifecycle;
+import net.minecraft.SharedConstants;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.core.MappedRegistry;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.data.registries.VanillaRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.level.biome.Biome;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Renders map tiles straight from a world save's Anvil region files, without a game client.
+ * One region file covers exactly one tile, so regions are rendered in parallel on a fork-join
+ * pool with no shared tile state. Tiles, chunk metadata and layers are written in the layout
+ * {@link TileManager} reads; chunks missing from the save keep what an existing tile shows.
+ * <p>
+ * Usage: {@code OfflineRenderer <world save> <tiles directory> [--dimension overworld|the_nether|the_end]
+ * [--threads n] [--min-y y] [--height h]}. A client reads the tiles from
+ * {@code cartographica/<world>/<dimension>/tiles} in its game directory.
+ */
+public final class OfflineRenderer implements Closeable {
+
+    private static final int LOG_EVERY_REGIONS = 64;
+
+    private final ChunkNbtReader reader;
+    private final BlockColors blockColors;
+    private final TileRegionStore tileStore;
+    private final ChunkMetadataStore metadataStore;
+    private final TileRegionStore layerStore;
+    private final TileLayerWriter layerWriter = new TileLayerWriter();
+    private final int regionCount;
+
+    private final AtomicInteger regionsDone = new AtomicInteger();
+    private final AtomicInteger tilesWritten = new AtomicInteger();
+    private final AtomicInteger chunksRendered = new AtomicInteger();
+    private final AtomicInteger chunksFailed = new AtomicInteger();
+
+    private OfflineRenderer(ChunkNbtReader reader, BlockColors blockColors, Path output, int regionCount) {
+        this.reader = reader;
+        this.blockColors = blockColors;
+        this.tileStore = new TileRegionStore(output, TileManager.TILE_EXTENSION);
+        this.metadataStore = new ChunkMetadataStore(output, TileManager.METADATA_EXTENSION, TileManager.CHUNKS_PER_TILE);
+        this.layerStore = new TileRegionStore(output, TileManager.LAYERS_EXTENSION);
+        this.regionCount = regionCount;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        if (options == null) {
+            Cartographica.LOGGER.error("Usage: OfflineRenderer <world save> <tiles directory> "
+                    + "[--dimension overworld|the_nether|the_end] [--threads n] [--min-y y] [--height h]");
+            return;
+        }
+        if (TileManager.CHUNKS_PER_TILE != McaRegionFile.CHUNKS_PER_SIDE) {
+            throw new IllegalStateException("Offline rendering needs tiles the size of a region file");
+        }
+
+        Path regionDirectory = options.world.resolve(options.dimensionFolder()).resolve("region");
+        List<Path> regions;
+        try (Stream<Path> files = Files.list(regionDirectory)) {
+            regions = files.filter(McaRegionFile::isRegionFile).sorted().toList();
+        }
+        Files.createDirectories(options.output);
+
+        long start = System.nanoTime();
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        BlockColors blockColors = BlockColors.createDefault();
+        TextureColors.install(blockColors);
+        ChunkNbtReader reader = new ChunkNbtReader(vanillaBiomes(), options.minY, options.height);
+
+        Cartographica.LOGGER.info("Rendering {} regions from {} into {} on {} threads",
+                regions.size(), regionDirectory, options.output, options.threads);
+
+        ForkJoinPool pool = new ForkJoinPool(options.threads);
+        try (OfflineRenderer renderer = new OfflineRenderer(reader, blockColors, options.output, regions.size())) {
+            pool.invoke(new RenderRegions(renderer, regions, 0, regions.size()));
+            Cartographica.LOGGER.info("Wrote {} tiles from {} chunks in {} s ({} chunks unreadable)",
+                    renderer.tilesWritten.get(), renderer.chunksRendered.get(),
+                    (System.nanoTime() - start) / 1_000_000_000, renderer.chunksFailed.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Biomes normally come from the server's datapacks; the built-in vanilla set stands in for them.
+     * Chunk hashes use these biome ids, so a client may draw a pre-rendered chunk once more.
+     */
+    private static Registry<Biome> vanillaBiomes() {
+        MappedRegistry<Biome> registry = new MappedRegistry<>(Registries.BIOME, Lifecycle.stable());
+        VanillaRegistries.createLookup().lookupOrThrow(Registries.BIOME).listElements()
+                .forEach(biome -> Registry.register(registry, biome.key(), biome.value()));
+        return registry;
+    }
+
+    /**
+     * Render the region file's chunks into its tile and write the tile, if any chunk was drawn
+     */
+    private void renderRegion(Path file) {
+        try {
+            McaRegionFile region = McaRegionFile.open(file);
+            int tileX = region.getRegionX();
+            int tileZ = region.getRegionZ();
+
+            int[] pixels = existingTile(tileX, tileZ);
+            ChunkMetadata metadata = metadataStore.get(tileX, tileZ);
+            int[] chunkPixels = new int[ChunkSnapshot.COLUMNS];
+            long now = System.currentTimeMillis();
+            int rendered = 0;
+
+            for (int localZ = 0; localZ < McaRegionFile.CHUNKS_PER_SIDE; localZ++) {
+                for (int localX = 0; localX < McaRegionFile.CHUNKS_PER_SIDE; localX++) {
+                    ChunkSnapshot snapshot = readChunk(region, localX, localZ);
+                    if (snapshot == null) {
+                        continue;
+                    }
+
+                    ChunkRasterizer.renderChunk(snapshot, chunkPixels, blockColors);
+                    for (int dz = 0; dz < 16; dz++) {
+                        System.arraycopy(chunkPixels, dz * 16, pixels,
+                                (localZ * 16 + dz) * TileManager.TILE_SIZE + localX * 16, 16);
+                    }
+                    metadata.record(localX, localZ, snapshot.contentHash(), now);
+                    layerWriter.add(tileX, tileZ, snapshot);
+                    rendered++;
+                }
+            }
+
+            if (rendered > 0) {
+                // Same order as the client: pixels first, so metadata never claims a chunk the tile lacks
+                tileStore.write(tileX, tileZ, TileCodec.encode(pixels, TileManager.TILE_SIZE, TileManager.TILE_SIZE));
+                metadataStore.save(tileX, tileZ);
+                layerWriter.flush(layerStore, tileX, tileZ);
+                tilesWritten.incrementAndGet();
+                chunksRendered.addAndGet(rendered);
+            }
+        } catch (IOException e) {
+            Cartographica.LOGGER.error("Failed to render region {}: {}", file.getFileName(), e.getMessage());
+        }
+
+        int done = regionsDone.incrementAndGet();
+        if (done % LOG_EVERY_REGIONS == 0 || done == regionCount) {
+            Cartographica.LOGGER.info("Rendered {}/{} regions", done, regionCount);
+        }
+    }
+
+    private ChunkSnapshot readChunk(McaRegionFile region, int localX, int localZ) {
+        try {
+            CompoundTag chunk = region.readChunk(localX, localZ);
+            return chunk == null ? null : reader.read(chunk);
+        } catch (IOException | RuntimeException e) {
+            // One damaged chunk should not cost the rest of the region
+            chunksFailed.incrementAndGet();
+            Cartographica.LOGGER.warn("Skipping chunk {},{} of region {},{}: {}",
+                    localX, localZ, region.getRegionX(), region.getRegionZ(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the tile already stored, or a blank one
+     */
+    private int[] existingTile(int tileX, int tileZ) throws IOException {
+        byte[] data = tileStore.read(tileX, tileZ);
+        if (data != null) {
+            try {
+                return TileCodec.decode(data, TileManager.TILE_SIZE, TileManager.TILE_SIZE);
+            } catch (IOException e) {
+                Cartographica.LOGGER.warn("Replacing unreadable tile {}_{}: {}", tileX, tileZ, e.getMessage());
+            }
+        }
+        return new int[TileManager.TILE_SIZE * TileManager.TILE_SIZE];
+    }
+
+    @Override
+    public void close() {
+        tileStore.close();
+        metadataStore.close();
+        layerStore.close();
+    }
+
+    /**
+     * Halves its range of region files until one is left, then renders it
+     */
+    private static final class RenderRegions extends RecursiveAction {
+        private final OfflineRenderer renderer;
+        private final List<Path> regions;
+        private final int from;
+        private final int to;
+
+        RenderRegions(OfflineRenderer renderer, List<Path> regions, int from, int to) {
+            this.renderer = renderer;
+            this.regions = regions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    renderer.renderRegion(regions.get(from));
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new RenderRegions(renderer, regions, from, middle), new RenderRegions(renderer, regions, middle, to));
+        }
+    }
+
+    private record Options(Path world, Path output, String dimension, int threads, int minY, int height) {
+
+        static Options parse(String[] args) {
+            if (args.length < 2) {
+                return null;
+            }
+
+            String dimension = "overworld";
+            int threads = Runtime.getRuntime().availableProcessors();
+            Integer minY = null;
+            Integer height = null;
+            try {
+                for (int i = 2; i + 1 < args.length; i += 2) {
+                    switch (args[i]) {
+                        case "--dimension" -> dimension = args[i + 1];
+                        case "--threads" -> threads = Math.max(1, Integer.parseInt(args[i + 1]));
+                        case "--min-y" -> minY = Integer.parseInt(args[i + 1]);
+                        case "--height" -> height = Integer.parseInt(args[i + 1]);
+                        default -> {
+                            return null;
+                        }
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if ((args.length - 2) % 2 != 0 || !List.of("overworld", "the_nether", "the_end").contains(dimension)) {
+                return null;
+            }
+
+            boolean overworld = dimension.equals("overworld");
+            return new Options(Path.of(args[0]), Path.of(args[1]), dimension, threads,
+                    minY != null ? minY : overworld ? -64 : 0,
+                    height != null ? height : overworld ? 384 : 256);
+        }
+
+        String dimensionFolder() {
+            return switch (dimension) {
+                case "the_nether" -> "DIM-1";
+                case "the_end" -> "DIM1";
+                default -> "";
+            };
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.drenn.cartographica.offline;
+
+import com.drenn.cartographica.Cartographica;
+import com.drenn.cartographica.client.BlockColorTable;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.properties.Property;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fills {@link BlockColorTable} without a game client, from the block models and textures on the
+ * classpath. Follows the same path the baked model does for its particle texture (blockstate
+ * variant, model parents, texture references), so tiles match the ones drawn in game.
+ */
+public final class TextureColors {
+
+    private static final int FALLBACK_COLOR = 0x888888;
+    private static final int MAX_PARENTS = 16;
+
+    private final Map<String, JsonObject> models = new HashMap<>();
+    private final Map<String, Integer> textureColors = new HashMap<>();
+
+    private TextureColors() {
+    }
+
+    /**
+     * Sample every block state's texture and install the result as the block color table
+     */
+    public static void install(BlockColors blockColors) {
+        long start = System.nanoTime();
+        TextureColors sampler = new TextureColors();
+
+        int stateCount = Block.BLOCK_STATE_REGISTRY.size();
+        int[] colors = new int[stateCount];
+        int[] baseColors = new int[stateCount];
+        boolean[] tinted = new boolean[stateCount];
+
+        for (BlockState blockState : Block.BLOCK_STATE_REGISTRY) {
+            int stateId = Block.getId(blockState);
+            if (stateId < 0 || stateId >= stateCount || blockState.isAir()) {
+                continue;
+            }
+
+            int textureColor = sampler.particleColor(blockState);
+            baseColors[stateId] = textureColor;
+            colors[stateId] = 0xFF000000 | BlockColorTable.brightenColor(textureColor, BlockColorTable.BRIGHTNESS);
+            tinted[stateId] = BlockColorTable.hasTintProvider(blockColors, blockState);
+        }
+
+        BlockColorTable.install(colors, baseColors, tinted);
+        Cartographica.LOGGER.info("Sampled {} textures for {} states in {} ms",
+                sampler.textureColors.size(), stateCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private int particleColor(BlockState blockState) {
+        try {
+            String model = variantModel(blockState);
+            String texture = model == null ? null : particleTexture(model);
+            return texture == null ? FALLBACK_COLOR : textureColors.computeIfAbsent(texture, this::sampleTexture);
+        } catch (RuntimeException e) {
+            return FALLBACK_COLOR;
+        }
+    }
+
+    /**
+     * @return the model of the first blockstate variant matching the state, or of the first multipart
+     */
+    private String variantModel(BlockState blockState) {
+        ResourceLocation block = BuiltInRegistries.BLOCK.getKey(blockState.getBlock());
+        JsonObject definition = readJson(block.getNamespace(), "blockstates/" + block.getPath() + ".json");
+        if (definition == null) {
+            return null;
+        }
+
+        if (definition.has("variants")) {
+            JsonObject variants = definition.getAsJsonObject("variants");
+            JsonElement fallback = null;
+            for (Map.Entry<String, JsonElement> variant : variants.entrySet()) {
+                if (fallback == null) {
+                    fallback = variant.getValue();
+                }
+                if (matches(blockState, variant.getKey())) {
+                    return modelName(variant.getValue());
+                }
+            }
+            return fallback == null ? null : modelName(fallback);
+        }
+
+        if (definition.has("multipart")) {
+            JsonArray parts = definition.getAsJsonArray("multipart");
+            return parts.isEmpty() ? null : modelName(parts.get(0).getAsJsonObject().get("apply"));
+        }
+        return null;
+    }
+
+    /**
+     * @param key e.g. "facing=north,lit=false", or "" for every state
+     */
+    private static boolean matches(BlockState blockState, String key) {
+        if (key.isEmpty()) {
+            return true;
+        }
+
+        for (String condition : key.split(",")) {
+            String[] pair = condition.split("=", 2);
+            Property<?> property = blockState.getBlock().getStateDefinition().getProperty(pair[0]);
+            if (property == null || pair.length < 2 || !pair[1].equals(valueName(blockState, property))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T extends Comparable<T>> String valueName(BlockState blockState, Property<T> property) {
+        return property.getName(blockState.getValue(property));
+    }
+
+    private static String modelName(JsonElement variant) {
+        JsonObject model = variant.isJsonArray() ? variant.getAsJsonArray().get(0).getAsJsonObject() : variant.getAsJsonObject();
+        return model.get("model").getAsString();
+    }
+
+    /**
+     * Resolve the model's "particle" texture through its parents and #references
+     */
+    private String particleTexture(String modelName) {
+        Map<String, String> textures = new HashMap<>();
+        String current = modelName;
+        for (int depth = 0; current != null && depth < MAX_PARENTS; depth++) {
+            JsonObject model = model(current);
+            if (model == null) {
+                break;
+            }
+            if (model.has("textures")) {
+                for (Map.Entry<String, JsonElement> texture : model.getAsJsonObject("textures").entrySet()) {
+                    if (texture.getValue().isJsonPrimitive()) {
+                        textures.putIfAbsent(texture.getKey(), texture.getValue().getAsString());
+                    }
+                }
+            }
+            current = model.has("parent") ? model.get("parent").getAsString() : null;
+        }
+
+        String texture = textures.get("particle");
+        if (texture == null && !textures.isEmpty()) {
+            texture = textures.values().iterator().next();
+        }
+        for (int depth = 0; texture != null && texture.startsWith("#") && depth < MAX_PARENTS; depth++) {
+            texture = textures.get(texture.substring(1));
+        }
+        return texture == null || texture.startsWith("#") ? null : texture;
+    }
+
+    private JsonObject model(String name) {
+        ResourceLocation location = ResourceLocation.tryParse(name);
+        if (location == null) {
+            return null;
+        }
+        return models.computeIfAbsent(location.toString(),
+                key -> readJson(location.getNamespace(), "models/" + location.getPath() + ".json"));
+    }
+
+    /**
+     * Average color of the texture's first animation frame, RGB
+     */
+    private int sampleTexture(String name) {
+        ResourceLocation location = ResourceLocation.tryParse(name);
+        if (location == null) {
+            return FALLBACK_COLOR;
+        }
+
+        try (InputStream in = resource(location.getNamespace(), "textures/" + location.getPath() + ".png")) {
+            BufferedImage image = in == null ? null : ImageIO.read(in);
+            if (image == null) {
+                return FALLBACK_COLOR;
+            }
+
+            // Animated textures stack their frames vertically
+            int width = image.getWidth();
+            int height = Math.min(image.getHeight(), width);
+            return BlockColorTable.sampleAverage(width, height, (x, y) -> {
+                int argb = image.getRGB(x, y);
+                return (argb & 0xFF00FF00) | ((argb >> 16) & 0xFF) | ((argb & 0xFF) << 16);
+            });
+        } catch (IOException e) {
+            return FALLBACK_COLOR;
+        }
+    }
+
+    private static JsonObject readJson(String namespace, String path) {
+        try (InputStream in = resource(namespace, path)) {
+            if (in == null) {
+                return null;
+            }
+            return JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static InputStream resource(String namespace, String path) {
+        return TextureColors.class.getClassLoader().getResourceAsStream("assets/" + namespace + "/" + path);
+    }
+}
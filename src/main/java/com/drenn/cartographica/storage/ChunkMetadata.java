@@ -0,0 +1,177 @@
+package com.drenn.cartographica.storage;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * What is known about each chunk of one tile: whether it has been drawn, when, and a hash
+ * of the surface it was drawn from. Stored beside the tile, so a chunk whose surface has not
+ * changed is never drawn again, and unexplored parts of a tile are known without decoding pixels.
+ * <pre>
+ * int   magic "CMET"
+ * byte  version
+ * byte  reserved
+ * short chunks per side
+ * int   count of rendered chunks
+ * count times:
+ *   short chunk index (z * side + x)
+ *   long  rendered at, epoch milliseconds
+ *   long  surface hash
+ * </pre>
+ * Thread-safe.
+ */
+public class ChunkMetadata {
+
+    public static final int MAGIC = 0x434D4554; // "CMET"
+    public static final byte VERSION = 1;
+
+    private static final int HEADER_BYTES = 12;
+    private static final int ENTRY_BYTES = 18;
+
+    private final int chunksPerSide;
+    // Epoch milliseconds of the last draw, 0 if never drawn
+    private final long[] renderedAt;
+    private final long[] hashes;
+    private boolean dirty;
+
+    public ChunkMetadata(int chunksPerSide) {
+        this.chunksPerSide = chunksPerSide;
+        this.renderedAt = new long[chunksPerSide * chunksPerSide];
+        this.hashes = new long[chunksPerSide * chunksPerSide];
+    }
+
+    public int getChunksPerSide() {
+        return chunksPerSide;
+    }
+
+    /**
+     * @return whether the chunk was drawn from a surface with this hash
+     */
+    public synchronized boolean matches(int chunkX, int chunkZ, long hash) {
+        int index = index(chunkX, chunkZ);
+        return renderedAt[index] != 0 && hashes[index] == hash;
+    }
+
+    public synchronized void record(int chunkX, int chunkZ, long hash, long time) {
+        int index = index(chunkX, chunkZ);
+        renderedAt[index] = Math.max(1, time);
+        hashes[index] = hash;
+        dirty = true;
+    }
+
+    /**
+     * Forget every drawn chunk, e.g. when the tile they were drawn into was lost
+     */
+    public synchronized void clear() {
+        Arrays.fill(renderedAt, 0);
+        Arrays.fill(hashes, 0);
+        dirty = true;
+    }
+
+    public synchronized boolean isRendered(int chunkX, int chunkZ) {
+        return renderedAt[index(chunkX, chunkZ)] != 0;
+    }
+
+    /**
+     * @return epoch milliseconds of the chunk's last draw, or 0 if it was never drawn
+     */
+    public synchronized long getRenderedAt(int chunkX, int chunkZ) {
+        return renderedAt[index(chunkX, chunkZ)];
+    }
+
+    public synchronized int getRenderedCount() {
+        int count = 0;
+        for (long time : renderedAt) {
+            if (time != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return one bit per chunk (index z * side + x), set where the chunk has been drawn
+     */
+    public synchronized long[] getRenderedBits() {
+        long[] bits = new long[(renderedAt.length + 63) / 64];
+        for (int i = 0; i < renderedAt.length; i++) {
+            if (renderedAt[i] != 0) {
+                bits[i >> 6] |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return whether anything was recorded since the last {@link #encode}
+     */
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Serialize the rendered chunks and clear the dirty flag
+     */
+    public synchronized byte[] encode() {
+        int count = getRenderedCount();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES).order(ByteOrder.BIG_ENDIAN)
+                .putInt(MAGIC)
+                .put(VERSION)
+                .put((byte) 0)
+                .putShort((short) chunksPerSide)
+                .putInt(count);
+
+        for (int i = 0; i < renderedAt.length; i++) {
+            if (renderedAt[i] != 0) {
+                buffer.putShort((short) i).putLong(renderedAt[i]).putLong(hashes[i]);
+            }
+        }
+
+        dirty = false;
+        return buffer.array();
+    }
+
+    /**
+     * @param expectedChunksPerSide metadata for tiles of any other size is rejected
+     */
+    public static ChunkMetadata decode(byte[] data, int expectedChunksPerSide) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a chunk metadata payload");
+            }
+
+            byte version = buffer.get();
+            if (version > VERSION) {
+                throw new IOException("Chunk metadata version " + version + " is newer than supported " + VERSION);
+            }
+            buffer.get();
+
+            int chunksPerSide = buffer.getShort();
+            if (chunksPerSide != expectedChunksPerSide) {
+                throw new IOException("Chunk metadata for " + chunksPerSide + " chunks per side, expected " + expectedChunksPerSide);
+            }
+
+            ChunkMetadata metadata = new ChunkMetadata(chunksPerSide);
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                int index = buffer.getShort() & 0xFFFF;
+                if (index >= metadata.renderedAt.length) {
+                    throw new IOException("Chunk index " + index + " out of range");
+                }
+                metadata.renderedAt[index] = buffer.getLong();
+                metadata.hashes[index] = buffer.getLong();
+            }
+            return metadata;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated chunk metadata", e);
+        }
+    }
+
+    private int index(int chunkX, int chunkZ) {
+        return chunkZ * chunksPerSide + chunkX;
+    }
+}
@@ -0,0 +1,124 @@
+package com.drenn.cartographica.storage;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Per-tile {@link ChunkMetadata}, kept in region files beside the tiles and cached for
+ * recently touched tiles. The tile writer copies a tile's metadata under the same lock as
+ * its pixels and writes it right after them, so stored metadata never claims a chunk the
+ * stored tile does not show. Records dropped before that (cache eviction, close before the
+ * tile was saved) only mean those chunks are drawn once more.
+ */
+public class ChunkMetadataStore implements Closeable {
+
+    private static final int MAX_CACHED = 256;
+
+    private final TileRegionStore store;
+    private final int chunksPerSide;
+    private final Long2ObjectLinkedOpenHashMap<ChunkMetadata> cache = new Long2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * @param extension file extension for the metadata region files, e.g. "ctm"
+     */
+    public ChunkMetadataStore(Path directory, String extension, int chunksPerSide) {
+        this.store = new TileRegionStore(directory, extension);
+        this.chunksPerSide = chunksPerSide;
+    }
+
+    public Path getDirectory() {
+        return store.getDirectory();
+    }
+
+    /**
+     * @return the tile's metadata, empty if nothing has been recorded for it yet
+     */
+    public ChunkMetadata get(int tileX, int tileZ) throws IOException {
+        long key = key(tileX, tileZ);
+        synchronized (cache) {
+            ChunkMetadata cached = cache.getAndMoveToLast(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] data = store.read(tileX, tileZ);
+        ChunkMetadata loaded = data == null ? new ChunkMetadata(chunksPerSide) : ChunkMetadata.decode(data, chunksPerSide);
+
+        synchronized (cache) {
+            // Another thread may have loaded it meanwhile; keep the first so no record is lost
+            ChunkMetadata existing = cache.getAndMoveToLast(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            cache.putAndMoveToLast(key, loaded);
+            if (cache.size() > MAX_CACHED) {
+                cache.removeFirst();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Encode the tile's metadata if anything was recorded since it was last encoded. Call with the
+     * tile's pixels locked, so the result describes exactly the pixels copied under that lock.
+     *
+     * @return the payload for {@link #write}, or null if nothing new was recorded
+     */
+    public byte[] snapshot(int tileX, int tileZ) {
+        ChunkMetadata metadata;
+        synchronized (cache) {
+            metadata = cache.get(key(tileX, tileZ));
+        }
+        return metadata != null && metadata.isDirty() ? metadata.encode() : null;
+    }
+
+    /**
+     * Store a payload from {@link #snapshot}, once the pixels it was taken with are stored
+     */
+    public void write(int tileX, int tileZ, byte[] data) throws IOException {
+        store.write(tileX, tileZ, data);
+    }
+
+    /**
+     * Forget what was drawn into a tile whose pixels were lost (missing or unreadable), on disk
+     * too, so its chunks are drawn again instead of being skipped as unchanged
+     */
+    public void reset(int tileX, int tileZ) throws IOException {
+        ChunkMetadata metadata = get(tileX, tileZ);
+        if (metadata.getRenderedCount() == 0) {
+            return;
+        }
+        metadata.clear();
+        store.write(tileX, tileZ, metadata.encode());
+    }
+
+    /**
+     * Write the tile's metadata if anything was recorded since it was last written
+     */
+    public void save(int tileX, int tileZ) throws IOException {
+        ChunkMetadata metadata;
+        synchronized (cache) {
+            metadata = cache.get(key(tileX, tileZ));
+        }
+        if (metadata != null && metadata.isDirty()) {
+            store.write(tileX, tileZ, metadata.encode());
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        store.close();
+    }
+
+    private static long key(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+}
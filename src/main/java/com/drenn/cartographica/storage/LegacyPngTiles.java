@@ -0,0 +1,98 @@
+package com.drenn.cartographica.storage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Migration from the old layout of one {@code <x>_<z>.png} file per tile into a region store.
+ * The PNG bytes are copied as-is, so no tile is decoded during migration;
+ * {@link TileCodec} still reads PNG payloads and they are re-encoded on their next save.
+ */
+public final class LegacyPngTiles {
+
+    private static final Pattern TILE_FILE = Pattern.compile("(-?\\d+)_(-?\\d+)\\.png");
+
+    private LegacyPngTiles() {
+    }
+
+    public static Path legacyPath(Path directory, int tileX, int tileZ) {
+        return directory.resolve(tileX + "_" + tileZ + ".png");
+    }
+
+    /**
+     * Move a single legacy tile into the store, if there is one.
+     * A tile already present in the store is newer, so the PNG is just removed.
+     *
+     * @return true if a legacy file was found
+     */
+    public static boolean importTile(Path directory, TileRegionStore store, int tileX, int tileZ) throws IOException {
+        Path legacy = legacyPath(directory, tileX, tileZ);
+
+        byte[] data;
+        try {
+            data = Files.readAllBytes(legacy);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        store.writeIfAbsent(tileX, tileZ, data);
+        Files.deleteIfExists(legacy);
+        return true;
+    }
+
+    /**
+     * Visit every legacy tile in the directory, from file names only
+     */
+    public static void forEachTile(Path directory, TileRegionStore.TileVisitor visitor) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.png")) {
+            for (Path file : files) {
+                Matcher matcher = TILE_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    visitor.visit(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Move every legacy tile in the directory into the store
+     *
+     * @param cancelled checked before each tile; the sweep stops once it answers true
+     * @return number of tiles migrated
+     */
+    public static int migrateAll(Path directory, TileRegionStore store, BooleanSupplier cancelled) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+
+        int migrated = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.png")) {
+            for (Path file : files) {
+                if (cancelled.getAsBoolean()) {
+                    break;
+                }
+                Matcher matcher = TILE_FILE.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+
+                int tileX = Integer.parseInt(matcher.group(1));
+                int tileZ = Integer.parseInt(matcher.group(2));
+                if (importTile(directory, store, tileX, tileZ)) {
+                    migrated++;
+                }
+            }
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,348 @@
+package com.drenn.cartographica.storage;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary tile format. Pixels are kept in ABGR order, the layout NativeImage uses,
+ * so decoding never converts colors.
+ * <pre>
+ * int   magic "CTIL"
+ * byte  version
+ * byte  encoding (RAW or PALETTE)
+ * short reserved
+ * int   width
+ * int   height
+ * ...   deflated body
+ *   RAW:     width * height little-endian ABGR ints
+ *   PALETTE: int count, count ABGR ints, then width * height byte indices
+ * </pre>
+ * Payloads written before this format (plain PNG) are still decoded.
+ */
+public final class TileCodec {
+
+    public static final int MAGIC = 0x4354494C; // "CTIL"
+    public static final byte VERSION = 1;
+
+    private static final byte ENCODING_RAW = 0;
+    private static final byte ENCODING_PALETTE = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int MAX_PALETTE = 256;
+
+    // Shared instead of per thread: with virtual render threads every task would otherwise build its
+    // own megabyte of buffers and a Deflater/Inflater whose native memory only GC frees
+    private static final BlockingQueue<Scratch> SCRATCH = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    private TileCodec() {
+    }
+
+    public static byte[] encode(int[] abgr, int width, int height) {
+        Scratch scratch = acquireScratch();
+        try {
+            return encode(abgr, width, height, scratch);
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+
+    private static byte[] encode(int[] abgr, int width, int height, Scratch scratch) {
+        int pixelCount = width * height;
+
+        int[] palette = scratch.palette;
+        int paletteSize = buildPalette(abgr, pixelCount, palette, scratch);
+
+        byte encoding;
+        int bodyLength;
+        byte[] body;
+
+        if (paletteSize > 0) {
+            encoding = ENCODING_PALETTE;
+            bodyLength = 4 + paletteSize * 4 + pixelCount;
+            body = scratch.body(bodyLength);
+
+            ByteBuffer buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(paletteSize);
+            buffer.asIntBuffer().put(palette, 0, paletteSize);
+
+            int indexStart = 4 + paletteSize * 4;
+            for (int i = 0; i < pixelCount; i++) {
+                body[indexStart + i] = (byte) scratch.lookup(abgr[i]);
+            }
+        } else {
+            encoding = ENCODING_RAW;
+            bodyLength = pixelCount * 4;
+            body = scratch.body(bodyLength);
+            ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(abgr, 0, pixelCount);
+        }
+
+        Deflater deflater = scratch.deflater;
+        deflater.reset();
+        deflater.setInput(body, 0, bodyLength);
+        deflater.finish();
+
+        byte[] out = scratch.output(HEADER_BYTES + bodyLength / 2 + 64);
+        ByteBuffer.wrap(out).order(ByteOrder.BIG_ENDIAN)
+                .putInt(MAGIC)
+                .put(VERSION)
+                .put(encoding)
+                .putShort((short) 0)
+                .putInt(width)
+                .putInt(height);
+
+        int length = HEADER_BYTES;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = scratch.growOutput(out.length * 2);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+
+        return Arrays.copyOf(out, length);
+    }
+
+    /**
+     * Decode a payload into ABGR pixels
+     *
+     * @param expectedWidth  tiles of any other size are rejected
+     * @param expectedHeight tiles of any other size are rejected
+     */
+    public static int[] decode(byte[] data, int expectedWidth, int expectedHeight) throws IOException {
+        if (isPng(data)) {
+            return decodePng(data, expectedWidth, expectedHeight);
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        if (data.length < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a tile payload");
+        }
+
+        byte version = header.get();
+        if (version > VERSION) {
+            throw new IOException("Tile format version " + version + " is newer than supported " + VERSION);
+        }
+
+        byte encoding = header.get();
+        header.getShort();
+        int width = header.getInt();
+        int height = header.getInt();
+        if (width != expectedWidth || height != expectedHeight) {
+            throw new IOException("Tile is " + width + "x" + height + ", expected " + expectedWidth + "x" + expectedHeight);
+        }
+
+        Scratch scratch = acquireScratch();
+        try {
+            return decodeBody(data, encoding, width * height, scratch);
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+
+    private static int[] decodeBody(byte[] data, byte encoding, int pixelCount, Scratch scratch) throws IOException {
+        int[] abgr = new int[pixelCount];
+        Inflater inflater = scratch.inflater;
+        inflater.reset();
+        inflater.setInput(data, HEADER_BYTES, data.length - HEADER_BYTES);
+
+        try {
+            if (encoding == ENCODING_RAW) {
+                byte[] body = scratch.body(pixelCount * 4);
+                inflateFully(inflater, body, pixelCount * 4);
+                ByteBuffer.wrap(body, 0, pixelCount * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(abgr);
+            } else if (encoding == ENCODING_PALETTE) {
+                byte[] countBytes = new byte[4];
+                inflateFully(inflater, countBytes, 4);
+                int paletteSize = ByteBuffer.wrap(countBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                if (paletteSize <= 0 || paletteSize > MAX_PALETTE) {
+                    throw new IOException("Bad palette size " + paletteSize);
+                }
+
+                int bodyLength = paletteSize * 4 + pixelCount;
+                byte[] body = scratch.body(bodyLength);
+                inflateFully(inflater, body, bodyLength);
+
+                int[] palette = scratch.palette;
+                ByteBuffer.wrap(body, 0, paletteSize * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(palette, 0, paletteSize);
+
+                int indexStart = paletteSize * 4;
+                for (int i = 0; i < pixelCount; i++) {
+                    int index = body[indexStart + i] & 0xFF;
+                    abgr[i] = index < paletteSize ? palette[index] : 0;
+                }
+            } else {
+                throw new IOException("Unknown tile encoding " + encoding);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt tile payload: " + e.getMessage(), e);
+        }
+
+        return abgr;
+    }
+
+    private static Scratch acquireScratch() {
+        Scratch scratch = SCRATCH.poll();
+        return scratch != null ? scratch : new Scratch();
+    }
+
+    /**
+     * Return buffers to the pool, or free them right away if the pool is full
+     */
+    private static void releaseScratch(Scratch scratch) {
+        if (!SCRATCH.offer(scratch)) {
+            scratch.deflater.end();
+            scratch.inflater.end();
+        }
+    }
+
+    /**
+     * Explicit PNG export, e.g. for sharing a tile. Not used for storage.
+     */
+    public static void writePng(int[] abgr, int width, int height, OutputStream out) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = swapRedBlue(abgr[i]);
+        }
+        image.setRGB(0, 0, width, height, argb, 0, width);
+        ImageIO.write(image, "png", out);
+    }
+
+    /**
+     * ARGB and ABGR differ only in the red and blue bytes, so one swap converts either way
+     */
+    public static int swapRedBlue(int color) {
+        return (color & 0xFF00FF00) | ((color >> 16) & 0xFF) | ((color & 0xFF) << 16);
+    }
+
+    private static boolean isPng(byte[] data) {
+        return data.length >= 4 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G';
+    }
+
+    private static int[] decodePng(byte[] data, int expectedWidth, int expectedHeight) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        if (image == null || image.getWidth() != expectedWidth || image.getHeight() != expectedHeight) {
+            throw new IOException("Unreadable PNG tile");
+        }
+
+        int[] pixels = image.getRGB(0, 0, expectedWidth, expectedHeight, null, 0, expectedWidth);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = swapRedBlue(pixels[i]);
+        }
+        return pixels;
+    }
+
+    private static void inflateFully(Inflater inflater, byte[] target, int length) throws DataFormatException, IOException {
+        int read = 0;
+        while (read < length) {
+            int n = inflater.inflate(target, read, length - read);
+            if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                throw new IOException("Truncated tile payload");
+            }
+            read += n;
+        }
+    }
+
+    /**
+     * Collect distinct colors into the palette.
+     *
+     * @return palette size, or 0 if there are more than 256 colors
+     */
+    private static int buildPalette(int[] abgr, int pixelCount, int[] palette, Scratch scratch) {
+        scratch.clearLookup();
+        int size = 0;
+        int last = 0;
+        boolean hasLast = false;
+
+        for (int i = 0; i < pixelCount; i++) {
+            int color = abgr[i];
+            if (hasLast && color == last) {
+                continue;
+            }
+            last = color;
+            hasLast = true;
+
+            if (scratch.lookup(color) < 0) {
+                if (size == MAX_PALETTE) {
+                    return 0;
+                }
+                scratch.insert(color, size);
+                palette[size++] = color;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Pooled buffers so steady-state encoding and decoding allocate only the result
+     */
+    private static final class Scratch {
+        private static final int LOOKUP_SIZE = 1024;
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        final Inflater inflater = new Inflater(true);
+        final int[] palette = new int[MAX_PALETTE];
+
+        private final int[] lookupKeys = new int[LOOKUP_SIZE];
+        private final int[] lookupValues = new int[LOOKUP_SIZE];
+        private byte[] body = new byte[0];
+        private byte[] output = new byte[0];
+
+        byte[] body(int length) {
+            if (body.length < length) {
+                body = new byte[length];
+            }
+            return body;
+        }
+
+        byte[] output(int length) {
+            if (output.length < length) {
+                output = new byte[length];
+            }
+            return output;
+        }
+
+        byte[] growOutput(int length) {
+            output = Arrays.copyOf(output, length);
+            return output;
+        }
+
+        void clearLookup() {
+            Arrays.fill(lookupValues, -1);
+        }
+
+        int lookup(int color) {
+            int slot = mix(color);
+            while (lookupValues[slot] >= 0) {
+                if (lookupKeys[slot] == color) {
+                    return lookupValues[slot];
+                }
+                slot = (slot + 1) & (LOOKUP_SIZE - 1);
+            }
+            return -1;
+        }
+
+        void insert(int color, int index) {
+            int slot = mix(color);
+            while (lookupValues[slot] >= 0) {
+                slot = (slot + 1) & (LOOKUP_SIZE - 1);
+            }
+            lookupKeys[slot] = color;
+            lookupValues[slot] = index;
+        }
+
+        private static int mix(int color) {
+            int h = color * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (LOOKUP_SIZE - 1);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.drenn.cartographica.storage;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.io.IOException;
+
+/**
+ * Which tiles exist, held in memory so existence checks never touch the disk,
+ * negative answers included. Built once from the region headers and legacy file names,
+ * then kept current by adding every tile that is saved. Thread-safe.
+ */
+public class TileIndex {
+
+    private final LongSet tiles = new LongOpenHashSet();
+
+    /**
+     * Index every tile in the store, plus legacy PNG tiles not migrated yet
+     */
+    public static TileIndex scan(TileRegionStore store) throws IOException {
+        TileIndex index = new TileIndex();
+        store.forEachTile(index::add);
+        LegacyPngTiles.forEachTile(store.getDirectory(), index::add);
+        return index;
+    }
+
+    public void add(int tileX, int tileZ) {
+        synchronized (tiles) {
+            tiles.add(key(tileX, tileZ));
+        }
+    }
+
+    public boolean contains(int tileX, int tileZ) {
+        synchronized (tiles) {
+            return tiles.contains(key(tileX, tileZ));
+        }
+    }
+
+    public int size() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    private static long key(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+}
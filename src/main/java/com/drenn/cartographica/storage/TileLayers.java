@@ -0,0 +1,252 @@
+package com.drenn.cartographica.storage;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The world data a tile's colors are derived from, one entry per column: surface height,
+ * block state, biome and water depth. Block states and biomes are stored as names in
+ * tile-local palettes, so the data survives registry id changes between game sessions.
+ * Palette index 0 means the column has not been mapped.
+ * <pre>
+ * int   magic "CTLY"
+ * byte  version
+ * byte  reserved
+ * short reserved
+ * int   size (columns per side)
+ * int   reserved
+ * ...   deflated body
+ *   short count, count UTF block state names (first is the unmapped entry)
+ *   byte  count - 1, count UTF biome names (first is the unmapped entry)
+ *   size * size big-endian shorts: height
+ *   size * size big-endian shorts: block palette index
+ *   size * size bytes: biome palette index
+ *   size * size bytes: water depth
+ * </pre>
+ * Not thread-safe; callers own an instance while they use it.
+ */
+public class TileLayers {
+
+    public static final int MAGIC = 0x43544C59; // "CTLY"
+    public static final byte VERSION = 1;
+    public static final int MAX_WATER_DEPTH = 255;
+
+    private static final int HEADER_BYTES = 16;
+    private static final int MAX_BLOCK_PALETTE = 0xFFFF;
+    private static final int MAX_BIOME_PALETTE = 0x100;
+
+    private final int size;
+    private final short[] heights;
+    private final short[] blocks;
+    private final byte[] biomes;
+    private final byte[] waterDepths;
+
+    private final List<String> blockPalette = new ArrayList<>();
+    private final Object2IntMap<String> blockIndices = new Object2IntOpenHashMap<>();
+    private final List<String> biomePalette = new ArrayList<>();
+    private final Object2IntMap<String> biomeIndices = new Object2IntOpenHashMap<>();
+
+    public TileLayers(int size) {
+        this.size = size;
+        this.heights = new short[size * size];
+        this.blocks = new short[size * size];
+        this.biomes = new byte[size * size];
+        this.waterDepths = new byte[size * size];
+        blockPalette.add("");
+        biomePalette.add("");
+        blockIndices.defaultReturnValue(-1);
+        biomeIndices.defaultReturnValue(-1);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param index column index, z * size + x
+     */
+    public void setColumn(int index, int height, String blockState, String biome, int waterDepth) {
+        heights[index] = (short) height;
+        blocks[index] = (short) paletteIndex(blockState, blockPalette, blockIndices, MAX_BLOCK_PALETTE);
+        biomes[index] = (byte) paletteIndex(biome, biomePalette, biomeIndices, MAX_BIOME_PALETTE);
+        waterDepths[index] = (byte) Math.min(MAX_WATER_DEPTH, Math.max(0, waterDepth));
+    }
+
+    public boolean isMapped(int index) {
+        return blocks[index] != 0;
+    }
+
+    public int getHeight(int index) {
+        return heights[index];
+    }
+
+    /**
+     * @return block palette index of the column, 0 if unmapped
+     */
+    public int getBlockIndex(int index) {
+        return blocks[index] & 0xFFFF;
+    }
+
+    /**
+     * @return biome palette index of the column, 0 if unknown
+     */
+    public int getBiomeIndex(int index) {
+        return biomes[index] & 0xFF;
+    }
+
+    public int getWaterDepth(int index) {
+        return waterDepths[index] & 0xFF;
+    }
+
+    /**
+     * @return block state names by palette index; entry 0 is the unmapped placeholder
+     */
+    public List<String> getBlockPalette() {
+        return blockPalette;
+    }
+
+    /**
+     * @return biome names by palette index; entry 0 is the unknown placeholder
+     */
+    public List<String> getBiomePalette() {
+        return biomePalette;
+    }
+
+    private static int paletteIndex(String name, List<String> palette, Object2IntMap<String> indices, int max) {
+        if (name == null || name.isEmpty()) {
+            return 0;
+        }
+
+        int index = indices.getInt(name);
+        if (index >= 0) {
+            return index;
+        }
+        if (palette.size() >= max) {
+            // Palette full; the column keeps its height and depth but loses this name
+            return 0;
+        }
+
+        index = palette.size();
+        palette.add(name);
+        indices.put(name, index);
+        return index;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN)
+                .putInt(MAGIC)
+                .put(VERSION)
+                .put((byte) 0)
+                .putShort((short) 0)
+                .putInt(size)
+                .putInt(0)
+                .array());
+
+        Deflater deflater = new Deflater();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeShort(blockPalette.size());
+            for (String name : blockPalette) {
+                out.writeUTF(name);
+            }
+            out.writeByte(biomePalette.size() - 1);
+            for (String name : biomePalette) {
+                out.writeUTF(name);
+            }
+
+            byte[] body = new byte[heights.length * 2];
+            ByteBuffer.wrap(body).order(ByteOrder.BIG_ENDIAN).asShortBuffer().put(heights);
+            out.write(body);
+            ByteBuffer.wrap(body).order(ByteOrder.BIG_ENDIAN).asShortBuffer().put(blocks);
+            out.write(body);
+            out.write(biomes);
+            out.write(waterDepths);
+        } catch (IOException e) {
+            // In-memory streams do not fail
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param expectedSize layers of any other size are rejected
+     */
+    public static TileLayers decode(byte[] data, int expectedSize) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        if (data.length < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a tile layers payload");
+        }
+
+        byte version = header.get();
+        if (version > VERSION) {
+            throw new IOException("Tile layers version " + version + " is newer than supported " + VERSION);
+        }
+        header.get();
+        header.getShort();
+        int size = header.getInt();
+        header.getInt();
+        if (size != expectedSize) {
+            throw new IOException("Tile layers of size " + size + ", expected " + expectedSize);
+        }
+
+        TileLayers layers = new TileLayers(size);
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(data, HEADER_BYTES, data.length - HEADER_BYTES), inflater))) {
+            int blockCount = in.readUnsignedShort();
+            readPalette(in, blockCount, layers.blockPalette, layers.blockIndices);
+            int biomeCount = in.readUnsignedByte() + 1;
+            readPalette(in, biomeCount, layers.biomePalette, layers.biomeIndices);
+
+            byte[] body = new byte[layers.heights.length * 2];
+            in.readFully(body);
+            ByteBuffer.wrap(body).order(ByteOrder.BIG_ENDIAN).asShortBuffer().get(layers.heights);
+            in.readFully(body);
+            ByteBuffer.wrap(body).order(ByteOrder.BIG_ENDIAN).asShortBuffer().get(layers.blocks);
+            in.readFully(layers.biomes);
+            in.readFully(layers.waterDepths);
+        } finally {
+            inflater.end();
+        }
+
+        for (int i = 0; i < layers.blocks.length; i++) {
+            if ((layers.blocks[i] & 0xFFFF) >= layers.blockPalette.size()
+                    || (layers.biomes[i] & 0xFF) >= layers.biomePalette.size()) {
+                throw new IOException("Palette index out of range at column " + i);
+            }
+        }
+        return layers;
+    }
+
+    private static void readPalette(DataInputStream in, int count, List<String> palette,
+                                    Object2IntMap<String> indices) throws IOException {
+        if (count < 1) {
+            throw new IOException("Empty palette");
+        }
+
+        // Entry 0 is the unmapped placeholder, already present
+        in.readUTF();
+        for (int i = 1; i < count; i++) {
+            String name = in.readUTF();
+            indices.put(name, palette.size());
+            palette.add(name);
+        }
+    }
+}
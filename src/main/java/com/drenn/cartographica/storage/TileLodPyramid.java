@@ -0,0 +1,234 @@
+package com.drenn.cartographica.storage;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Downsampled copies of the base tiles at 2x, 4x, 8x and 16x, stored in {@code lod<level>}
+ * region stores next to the base tiles. A level-L tile has the same pixel size as a base
+ * tile but covers 2^L x 2^L base tiles.
+ * <p>
+ * When a base tile changes only its quadrant in each ancestor is recomputed, so keeping
+ * the pyramid current costs four quarter-size downsamples per saved tile. The changed
+ * tile must already be in its store when {@link #update} runs.
+ * {@link #update} and {@link #build} must be called from a single thread;
+ * {@link #read} is safe from any thread.
+ */
+public class TileLodPyramid implements Closeable {
+
+    public static final int MAX_LEVEL = 4;
+    private static final int CACHE_PER_LEVEL = 16;
+
+    private final int tileSize;
+    private final TileRegionStore baseStore;
+    private final TileRegionStore[] levelStores = new TileRegionStore[MAX_LEVEL + 1];
+    @SuppressWarnings("unchecked")
+    private final Long2ObjectLinkedOpenHashMap<int[]>[] cache = new Long2ObjectLinkedOpenHashMap[MAX_LEVEL + 1];
+
+    public TileLodPyramid(TileRegionStore baseStore, String extension, int tileSize) {
+        this.tileSize = tileSize;
+        this.baseStore = baseStore;
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            levelStores[level] = new TileRegionStore(baseStore.getDirectory().resolve("lod" + level), extension);
+            cache[level] = new Long2ObjectLinkedOpenHashMap<>();
+        }
+    }
+
+    public TileRegionStore getBaseStore() {
+        return baseStore;
+    }
+
+    /**
+     * Coordinate of the level-L tile containing a base tile coordinate
+     */
+    public static int lodCoord(int baseCoord, int level) {
+        return baseCoord >> level;
+    }
+
+    /**
+     * Propagate a changed base tile up through every level
+     */
+    public void update(int tileX, int tileZ, int[] baseAbgr) throws IOException {
+        int[] child = baseAbgr;
+        int childX = tileX;
+        int childZ = tileZ;
+
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int parentX = childX >> 1;
+            int parentZ = childZ >> 1;
+
+            int[] parent = read(level, parentX, parentZ);
+            if (parent == null) {
+                // First change under this tile: pick up siblings saved before the pyramid existed too
+                parent = build(level, parentX, parentZ);
+                if (parent == null) {
+                    return;
+                }
+            } else {
+                // Never modify an array a reader may be holding
+                parent = parent.clone();
+                downsampleInto(child, parent, childX & 1, childZ & 1);
+                write(level, parentX, parentZ, parent);
+            }
+
+            child = parent;
+            childX = parentX;
+            childZ = parentZ;
+        }
+    }
+
+    /**
+     * Build a missing level tile from the levels below it, e.g. for tiles saved before
+     * the pyramid existed.
+     *
+     * @return the built tile, or null if nothing below it has been explored
+     */
+    public int[] build(int level, int x, int z) throws IOException {
+        if (level <= 0 || level > MAX_LEVEL) {
+            return null;
+        }
+
+        int[] parent = null;
+        for (int dz = 0; dz < 2; dz++) {
+            for (int dx = 0; dx < 2; dx++) {
+                int childX = (x << 1) + dx;
+                int childZ = (z << 1) + dz;
+
+                int[] child = read(level - 1, childX, childZ);
+                if (child == null && level - 1 > 0) {
+                    child = build(level - 1, childX, childZ);
+                }
+                if (child == null) {
+                    continue;
+                }
+
+                if (parent == null) {
+                    parent = new int[tileSize * tileSize];
+                }
+                downsampleInto(child, parent, dx, dz);
+            }
+        }
+
+        if (parent != null) {
+            write(level, x, z, parent);
+        }
+        return parent;
+    }
+
+    /**
+     * @return ABGR pixels of a tile at the given level (0 = base), or null if it does not exist
+     */
+    public int[] read(int level, int x, int z) throws IOException {
+        if (level == 0) {
+            byte[] data = baseStore.read(x, z);
+            return data == null ? null : TileCodec.decode(data, tileSize, tileSize);
+        }
+
+        long key = key(x, z);
+        Long2ObjectLinkedOpenHashMap<int[]> levelCache = cache[level];
+        synchronized (levelCache) {
+            int[] cached = levelCache.getAndMoveToLast(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] data = levelStores[level].read(x, z);
+        if (data == null) {
+            return null;
+        }
+
+        int[] pixels = TileCodec.decode(data, tileSize, tileSize);
+        remember(level, key, pixels);
+        return pixels;
+    }
+
+    /**
+     * @return pixels of a level tile (level 1 and up) if they are in memory, without reading the store
+     */
+    public int[] peek(int level, int x, int z) {
+        Long2ObjectLinkedOpenHashMap<int[]> levelCache = cache[level];
+        synchronized (levelCache) {
+            return levelCache.getAndMoveToLast(key(x, z));
+        }
+    }
+
+    public boolean exists(int level, int x, int z) throws IOException {
+        return level == 0 ? baseStore.exists(x, z) : levelStores[level].exists(x, z);
+    }
+
+    private void write(int level, int x, int z, int[] pixels) throws IOException {
+        levelStores[level].write(x, z, TileCodec.encode(pixels, tileSize, tileSize));
+        remember(level, key(x, z), pixels);
+    }
+
+    private void remember(int level, long key, int[] pixels) {
+        Long2ObjectLinkedOpenHashMap<int[]> levelCache = cache[level];
+        synchronized (levelCache) {
+            levelCache.putAndMoveToLast(key, pixels);
+            while (levelCache.size() > CACHE_PER_LEVEL) {
+                levelCache.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * 2x2 box filter of a full child tile into one quadrant of its parent.
+     * Colors average only the covered pixels so unexplored areas do not darken the edges.
+     */
+    private void downsampleInto(int[] child, int[] parent, int quadrantX, int quadrantZ) {
+        int half = tileSize / 2;
+        int originX = quadrantX * half;
+        int originZ = quadrantZ * half;
+
+        for (int z = 0; z < half; z++) {
+            int row0 = (z * 2) * tileSize;
+            int row1 = row0 + tileSize;
+            int target = (originZ + z) * tileSize + originX;
+
+            for (int x = 0; x < half; x++) {
+                int column = x * 2;
+                parent[target + x] = average(
+                        child[row0 + column], child[row0 + column + 1],
+                        child[row1 + column], child[row1 + column + 1]);
+            }
+        }
+    }
+
+    private static int average(int c0, int c1, int c2, int c3) {
+        int alpha = (c0 >>> 24) + (c1 >>> 24) + (c2 >>> 24) + (c3 >>> 24);
+        if (alpha == 0) {
+            return 0;
+        }
+
+        // Clear the color of transparent pixels so they drop out of the sums below
+        c0 = c0 >>> 24 != 0 ? c0 : 0;
+        c1 = c1 >>> 24 != 0 ? c1 : 0;
+        c2 = c2 >>> 24 != 0 ? c2 : 0;
+        c3 = c3 >>> 24 != 0 ? c3 : 0;
+
+        int covered = (c0 >>> 24 != 0 ? 1 : 0) + (c1 >>> 24 != 0 ? 1 : 0)
+                + (c2 >>> 24 != 0 ? 1 : 0) + (c3 >>> 24 != 0 ? 1 : 0);
+        int blue = (((c0 >> 16) & 0xFF) + ((c1 >> 16) & 0xFF) + ((c2 >> 16) & 0xFF) + ((c3 >> 16) & 0xFF)) / covered;
+        int green = (((c0 >> 8) & 0xFF) + ((c1 >> 8) & 0xFF) + ((c2 >> 8) & 0xFF) + ((c3 >> 8) & 0xFF)) / covered;
+        int red = ((c0 & 0xFF) + (c1 & 0xFF) + (c2 & 0xFF) + (c3 & 0xFF)) / covered;
+
+        return ((alpha / 4) << 24) | (blue << 16) | (green << 8) | red;
+    }
+
+    private static long key(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void close() {
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            levelStores[level].close();
+            synchronized (cache[level]) {
+                cache[level].clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.drenn.cartographica.storage;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntRBTreeMap;
+import it.unimi.dsi.fastutil.longs.Long2IntSortedMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Region-style tile container: 32x32 tiles per file instead of one file per tile.
+ * <p>
+ * Each region file starts with a fixed header (16 byte preamble, then one 16 byte
+ * entry per tile: offset, length, capacity). The header is read into memory when the
+ * file is opened and each changed entry is written back; payloads are read with positional
+ * reads. Nothing is memory-mapped, so a closed region releases its file right away. Every write goes to a fresh slot
+ * and only then is the header pointed at it, so an interrupted write leaves the old
+ * payload intact. Freed slots are kept in a free list (rebuilt from the header when the
+ * file is opened) and reused before the file grows. All access goes through the store's
+ * lock, so a region is never closed underneath a reader or writer.
+ */
+public class TileRegionStore implements Closeable {
+
+    public static final int REGION_SIZE = 32;
+
+    public interface TileVisitor {
+        void visit(int tileX, int tileZ);
+    }
+
+    private static final int MAGIC = 0x43545247; // "CTRG"
+    private static final int VERSION = 1;
+    private static final int PREAMBLE_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+    private static final int HEADER_BYTES = PREAMBLE_BYTES + REGION_SIZE * REGION_SIZE * ENTRY_BYTES;
+    private static final int SECTOR_BYTES = 4096;
+    private static final int MAX_OPEN_REGIONS = 64;
+
+    private final Path directory;
+    private final String extension;
+    private final Long2ObjectLinkedOpenHashMap<Region> openRegions = new Long2ObjectLinkedOpenHashMap<>();
+    private boolean closed;
+
+    /**
+     * @param extension file extension for this store's region files, e.g. "ctr"
+     */
+    public TileRegionStore(Path directory, String extension) {
+        this.directory = directory;
+        this.extension = extension;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized boolean exists(int tileX, int tileZ) throws IOException {
+        Region region = getRegion(tileX, tileZ, false);
+        return region != null && region.has(entryIndex(tileX, tileZ));
+    }
+
+    /**
+     * @return the stored payload, or null if this tile has never been written
+     */
+    public synchronized byte[] read(int tileX, int tileZ) throws IOException {
+        Region region = getRegion(tileX, tileZ, false);
+        if (region == null) {
+            return null;
+        }
+        return region.read(entryIndex(tileX, tileZ));
+    }
+
+    public synchronized void write(int tileX, int tileZ, byte[] data) throws IOException {
+        Region region = getRegion(tileX, tileZ, true);
+        region.write(entryIndex(tileX, tileZ), data);
+    }
+
+    /**
+     * Write only if the tile has no payload yet, checked and written under one lock
+     *
+     * @return true if the data was written
+     */
+    public synchronized boolean writeIfAbsent(int tileX, int tileZ, byte[] data) throws IOException {
+        if (exists(tileX, tileZ)) {
+            return false;
+        }
+        write(tileX, tileZ, data);
+        return true;
+    }
+
+    /**
+     * Visit every tile with a payload, found from the region headers without reading payloads
+     */
+    public synchronized void forEachTile(TileVisitor visitor) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        String prefix = "r.";
+        String suffix = "." + extension;
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.toList();
+        }
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+                continue;
+            }
+
+            String[] coords = name.substring(prefix.length(), name.length() - suffix.length()).split("\\.");
+            int regionX;
+            int regionZ;
+            try {
+                if (coords.length != 2) {
+                    continue;
+                }
+                regionX = Integer.parseInt(coords[0]);
+                regionZ = Integer.parseInt(coords[1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            Region region = getRegion(regionX * REGION_SIZE, regionZ * REGION_SIZE, false);
+            if (region == null) {
+                continue;
+            }
+            for (int index = 0; index < REGION_SIZE * REGION_SIZE; index++) {
+                if (region.has(index)) {
+                    visitor.visit(regionX * REGION_SIZE + index % REGION_SIZE, regionZ * REGION_SIZE + index / REGION_SIZE);
+                }
+            }
+        }
+    }
+
+    public Path regionPath(int regionX, int regionZ) {
+        return directory.resolve("r." + regionX + "." + regionZ + "." + extension);
+    }
+
+    private synchronized Region getRegion(int tileX, int tileZ, boolean create) throws IOException {
+        if (closed) {
+            throw new IOException("Tile store is closed: " + directory);
+        }
+
+        int regionX = Math.floorDiv(tileX, REGION_SIZE);
+        int regionZ = Math.floorDiv(tileZ, REGION_SIZE);
+        long regionKey = ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+
+        Region region = openRegions.getAndMoveToLast(regionKey);
+        if (region != null) {
+            return region;
+        }
+
+        Path path = regionPath(regionX, regionZ);
+        if (!create && !Files.exists(path)) {
+            return null;
+        }
+
+        if (openRegions.size() >= MAX_OPEN_REGIONS) {
+            openRegions.removeFirst().close();
+        }
+
+        Files.createDirectories(directory);
+        region = new Region(path);
+        openRegions.putAndMoveToLast(regionKey, region);
+        return region;
+    }
+
+    private static int entryIndex(int tileX, int tileZ) {
+        return Math.floorMod(tileZ, REGION_SIZE) * REGION_SIZE + Math.floorMod(tileX, REGION_SIZE);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Region region : openRegions.values()) {
+            region.close();
+        }
+        openRegions.clear();
+    }
+
+    private static final class Region {
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        // Unused slots between payloads, offset to capacity, adjacent slots merged
+        private final Long2IntSortedMap freeSlots = new Long2IntRBTreeMap();
+
+        Region(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+            boolean fresh = channel.size() < HEADER_BYTES;
+            if (fresh) {
+                // Writing the empty header grows a new file to the full header size
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                writeFully(header.duplicate().clear(), 0);
+            } else {
+                ByteBuffer target = header.duplicate().clear();
+                while (target.hasRemaining()) {
+                    if (channel.read(target, target.position()) < 0) {
+                        break;
+                    }
+                }
+            }
+
+            if (!fresh && header.getInt(0) != MAGIC) {
+                channel.close();
+                throw new IOException("Not a tile region file: " + path);
+            } else {
+                findFreeSlots();
+            }
+        }
+
+        /**
+         * Every gap between the slots the header points at is free
+         */
+        private void findFreeSlots() {
+            Long2IntSortedMap used = new Long2IntRBTreeMap();
+            for (int index = 0; index < REGION_SIZE * REGION_SIZE; index++) {
+                int entry = PREAMBLE_BYTES + index * ENTRY_BYTES;
+                long offset = header.getLong(entry);
+                if (offset != 0) {
+                    used.put(offset, header.getInt(entry + 12));
+                }
+            }
+
+            long cursor = alignToSector(HEADER_BYTES);
+            for (Long2IntMap.Entry slot : used.long2IntEntrySet()) {
+                if (slot.getLongKey() > cursor) {
+                    freeSlots.put(cursor, (int) (slot.getLongKey() - cursor));
+                }
+                cursor = Math.max(cursor, slot.getLongKey() + slot.getIntValue());
+            }
+        }
+
+        synchronized boolean has(int index) {
+            int entry = PREAMBLE_BYTES + index * ENTRY_BYTES;
+            return header.getLong(entry) != 0 && header.getInt(entry + 8) > 0;
+        }
+
+        synchronized byte[] read(int index) throws IOException {
+            int entry = PREAMBLE_BYTES + index * ENTRY_BYTES;
+            long offset = header.getLong(entry);
+            int length = header.getInt(entry + 8);
+
+            if (offset == 0 || length <= 0) {
+                return null;
+            }
+            if (offset + length > channel.size()) {
+                throw new IOException("Truncated tile entry " + index + " in " + path);
+            }
+
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Truncated tile entry " + index + " in " + path);
+                }
+            }
+            return bytes;
+        }
+
+        synchronized void write(int index, byte[] data) throws IOException {
+            int entry = PREAMBLE_BYTES + index * ENTRY_BYTES;
+            long oldOffset = header.getLong(entry);
+            int oldCapacity = header.getInt(entry + 12);
+
+            // A quarter extra, so a slightly larger payload still fits a reused slot
+            int capacity = (int) alignToSector(data.length + data.length / 4L);
+            long offset = allocate(capacity);
+
+            writeFully(ByteBuffer.wrap(data), offset);
+
+            // Reserve the whole slot so the next append starts after it
+            if (channel.size() < offset + capacity) {
+                channel.write(ByteBuffer.allocate(1), offset + capacity - 1);
+            }
+
+            // Payload first, then the index entry that points at it, then the old slot is up for reuse
+            header.putLong(entry, offset);
+            header.putInt(entry + 8, data.length);
+            header.putInt(entry + 12, capacity);
+            writeFully(header.slice(entry, ENTRY_BYTES), entry);
+            if (oldOffset != 0) {
+                release(oldOffset, oldCapacity);
+            }
+        }
+
+        /**
+         * Take the smallest free slot that fits, or append to the end of the file
+         */
+        private long allocate(int capacity) throws IOException {
+            long bestOffset = -1;
+            int bestCapacity = Integer.MAX_VALUE;
+            for (Long2IntMap.Entry slot : freeSlots.long2IntEntrySet()) {
+                if (slot.getIntValue() >= capacity && slot.getIntValue() < bestCapacity) {
+                    bestOffset = slot.getLongKey();
+                    bestCapacity = slot.getIntValue();
+                }
+            }
+
+            if (bestOffset < 0) {
+                return Math.max(alignToSector(channel.size()), alignToSector(HEADER_BYTES));
+            }
+
+            freeSlots.remove(bestOffset);
+            if (bestCapacity > capacity) {
+                freeSlots.put(bestOffset + capacity, bestCapacity - capacity);
+            }
+            return bestOffset;
+        }
+
+        private void release(long offset, int capacity) {
+            if (capacity <= 0) {
+                return;
+            }
+
+            // Merge with the free slots directly before and after
+            Long2IntSortedMap before = freeSlots.headMap(offset);
+            if (!before.isEmpty()) {
+                long previous = before.lastLongKey();
+                int previousCapacity = freeSlots.get(previous);
+                if (previous + previousCapacity == offset) {
+                    freeSlots.remove(previous);
+                    offset = previous;
+                    capacity += previousCapacity;
+                }
+            }
+            long next = offset + capacity;
+            if (freeSlots.containsKey(next)) {
+                capacity += freeSlots.remove(next);
+            }
+            freeSlots.put(offset, capacity);
+        }
+
+        private void writeFully(ByteBuffer buffer, long position) throws IOException {
+            int start = buffer.position();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position() - start);
+            }
+        }
+
+        synchronized void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more we can do for this file
+            }
+        }
+
+        private static long alignToSector(long value) {
+            return (value + SECTOR_BYTES - 1) / SECTOR_BYTES * SECTOR_BYTES;
+        }
+    }
+}
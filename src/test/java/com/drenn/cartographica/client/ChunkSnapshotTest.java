@@ -0,0 +1,83 @@
+package com.drenn.cartographica.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ChunkSnapshotTest {
+
+    @Test
+    void sameSurfaceHashesTheSame() {
+        assertEquals(surface(1).contentHash(), surface(1).contentHash());
+    }
+
+    @Test
+    void everyColumnFieldChangesTheHash() {
+        long hash = surface(1).contentHash();
+
+        Surface height = new Surface(1);
+        height.heights[200]++;
+        Surface state = new Surface(1);
+        state.stateIds[0]++;
+        Surface biome = new Surface(1);
+        biome.biomeIds[255]++;
+        Surface water = new Surface(1);
+        water.waterDepths[17]++;
+
+        assertNotEquals(hash, height.snapshot().contentHash());
+        assertNotEquals(hash, state.snapshot().contentHash());
+        assertNotEquals(hash, biome.snapshot().contentHash());
+        assertNotEquals(hash, water.snapshot().contentHash());
+    }
+
+    @Test
+    void swappedColumnsChangeTheHash() {
+        Surface original = new Surface(1);
+        original.stateIds[0] = 1;
+        original.stateIds[1] = 2;
+        Surface swapped = new Surface(1);
+        swapped.stateIds[0] = 2;
+        swapped.stateIds[1] = 1;
+
+        assertNotEquals(original.snapshot().contentHash(), swapped.snapshot().contentHash());
+    }
+
+    @Test
+    void hashIgnoresChunkPosition() {
+        // The hash is stored per chunk slot, so only the surface itself may feed it
+        Surface surface = new Surface(1);
+        assertEquals(surface.snapshot(0, 0).contentHash(), surface.snapshot(31, -7).contentHash());
+    }
+
+    private static ChunkSnapshot surface(long seed) {
+        return new Surface(seed).snapshot();
+    }
+
+    private static final class Surface {
+        final int[] heights = new int[ChunkSnapshot.COLUMNS];
+        final int[] stateIds = new int[ChunkSnapshot.COLUMNS];
+        final int[] biomeIds = new int[ChunkSnapshot.COLUMNS];
+        final byte[] waterDepths = new byte[ChunkSnapshot.COLUMNS];
+
+        Surface(long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < ChunkSnapshot.COLUMNS; i++) {
+                heights[i] = random.nextInt(-64, 320);
+                stateIds[i] = random.nextInt(20_000);
+                biomeIds[i] = random.nextInt(64);
+                waterDepths[i] = (byte) random.nextInt(ChunkSnapshot.MAX_WATER_DEPTH);
+            }
+        }
+
+        ChunkSnapshot snapshot() {
+            return snapshot(0, 0);
+        }
+
+        ChunkSnapshot snapshot(int chunkX, int chunkZ) {
+            return ChunkSnapshot.of(chunkX, chunkZ, -64, 384, heights, stateIds, biomeIds, waterDepths, null);
+        }
+    }
+}
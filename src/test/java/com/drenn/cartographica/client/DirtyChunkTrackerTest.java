@@ -0,0 +1,144 @@
+package com.drenn.cartographica.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DirtyChunkTrackerTest {
+
+    private static final int LAST = DirtyChunkTracker.CHUNKS_PER_TILE - 1;
+
+    @Test
+    void singleChunkIsOneRun() {
+        assertEquals(List.of(new Run(5, 7, 1)), runs(chunk(5, 7)));
+    }
+
+    @Test
+    void adjacentChunksMergeIntoOneRun() {
+        assertEquals(List.of(new Run(3, 2, 4)), runs(chunk(3, 2), chunk(4, 2), chunk(5, 2), chunk(6, 2)));
+    }
+
+    @Test
+    void gapsSplitRuns() {
+        assertEquals(List.of(new Run(0, 0, 2), new Run(5, 0, 1), new Run(LAST, 0, 1)),
+                runs(chunk(0, 0), chunk(1, 0), chunk(5, 0), chunk(LAST, 0)));
+    }
+
+    @Test
+    void fullRowsAreOneRunEach() {
+        int[][] chunks = new int[DirtyChunkTracker.CHUNKS_PER_TILE * 2][];
+        for (int x = 0; x <= LAST; x++) {
+            chunks[x] = new int[]{x, 0};
+            chunks[LAST + 1 + x] = new int[]{x, 1};
+        }
+        assertEquals(List.of(new Run(0, 0, LAST + 1), new Run(0, 1, LAST + 1)), runs(chunks));
+    }
+
+    @Test
+    void runsReachTheLastColumnOfOddRows() {
+        // Odd rows live in the upper half of a word, so this run ends at its sign bit
+        assertEquals(List.of(new Run(LAST - 2, 1, 3), new Run(LAST, LAST, 1)),
+                runs(chunk(LAST - 2, 1), chunk(LAST - 1, 1), chunk(LAST, 1), chunk(LAST, LAST)));
+    }
+
+    @Test
+    void cleanTileHasNoRuns() {
+        assertEquals(List.of(), runs());
+    }
+
+    @Test
+    void onlyWatchedTilesAreTracked() {
+        DirtyChunkTracker tracker = new DirtyChunkTracker();
+        long watched = TileManager.tileKey(1, -1);
+        tracker.watch(watched);
+
+        tracker.onChunkChanged(1, -1, 3, 4);
+        tracker.onChunkChanged(2, -1, 3, 4);
+
+        assertNotNull(tracker.take(watched));
+        assertNull(tracker.take(TileManager.tileKey(2, -1)));
+    }
+
+    @Test
+    void takeResetsTheTile() {
+        DirtyChunkTracker tracker = new DirtyChunkTracker();
+        long key = TileManager.tileKey(0, 0);
+        tracker.watch(key);
+        tracker.onChunkChanged(0, 0, 1, 1);
+
+        assertEquals(List.of(new Run(1, 1, 1)), runs(tracker.take(key)));
+        assertNull(tracker.take(key));
+    }
+
+    @Test
+    void restoreMergesWithNewChanges() {
+        DirtyChunkTracker tracker = new DirtyChunkTracker();
+        long key = TileManager.tileKey(0, 0);
+        tracker.watch(key);
+        tracker.onChunkChanged(0, 0, 1, 1);
+        long[] taken = tracker.take(key);
+
+        tracker.onChunkChanged(0, 0, 2, 1);
+        tracker.restore(key, taken);
+
+        assertEquals(List.of(new Run(1, 1, 2)), runs(tracker.take(key)));
+    }
+
+    @Test
+    void watchForgetsEarlierChanges() {
+        DirtyChunkTracker tracker = new DirtyChunkTracker();
+        long key = TileManager.tileKey(0, 0);
+        tracker.watch(key);
+        tracker.onChunkChanged(0, 0, 1, 1);
+        tracker.watch(key);
+
+        assertNull(tracker.take(key));
+    }
+
+    @Test
+    void unwatchedTileIgnoresRestore() {
+        DirtyChunkTracker tracker = new DirtyChunkTracker();
+        long key = TileManager.tileKey(0, 0);
+        tracker.watch(key);
+        tracker.onChunkChanged(0, 0, 1, 1);
+        long[] taken = tracker.take(key);
+        tracker.unwatch(key);
+
+        tracker.restore(key, taken);
+        tracker.watch(key);
+        assertNull(tracker.take(key));
+        assertArrayEquals(bits(chunk(1, 1)), taken);
+    }
+
+    private static int[] chunk(int chunkX, int chunkZ) {
+        return new int[]{chunkX, chunkZ};
+    }
+
+    private static long[] bits(int[]... chunks) {
+        long[] dirty = new long[DirtyChunkTracker.CHUNKS_PER_TILE * DirtyChunkTracker.CHUNKS_PER_TILE / 64];
+        for (int[] chunk : chunks) {
+            int bit = chunk[1] * DirtyChunkTracker.CHUNKS_PER_TILE + chunk[0];
+            dirty[bit >> 6] |= 1L << bit;
+        }
+        return dirty;
+    }
+
+    private static List<Run> runs(int[]... chunks) {
+        return runs(bits(chunks));
+    }
+
+    private static List<Run> runs(long[] dirty) {
+        List<Run> runs = new ArrayList<>();
+        DirtyChunkTracker.forEachRun(dirty, (chunkX, chunkZ, length) -> runs.add(new Run(chunkX, chunkZ, length)));
+        return runs;
+    }
+
+    private record Run(int chunkX, int chunkZ, int length) {
+    }
+}
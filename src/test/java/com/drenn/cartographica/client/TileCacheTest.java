@@ -0,0 +1,155 @@
+package com.drenn.cartographica.client;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileCacheTest {
+
+    // Each test tile is 1 KiB
+    private static final int PIXELS = 256;
+    private static final long TILE_BYTES = PIXELS * 4L;
+
+    private final LongList flushed = new LongArrayList();
+
+    @Test
+    void leastRecentlyUsedTileIsEvicted() {
+        TileCache cache = new TileCache(TILE_BYTES * 3, (key, pixels) -> flushed.add(key));
+        long a = TileManager.tileKey(0, 0);
+        long b = TileManager.tileKey(1, 0);
+        long c = TileManager.tileKey(0, 1);
+        cache.put(a, tile());
+        cache.put(b, tile());
+        cache.put(c, tile());
+        cache.get(a);
+
+        cache.put(TileManager.tileKey(1, 1), tile());
+
+        assertEquals(3, cache.size());
+        assertNull(cache.peek(b));
+        assertNotNull(cache.peek(a));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(TILE_BYTES * 3, cache.getUsedBytes());
+    }
+
+    @Test
+    void distantTilesAgeFaster() {
+        TileCache cache = new TileCache(TILE_BYTES * 2, (key, pixels) -> flushed.add(key));
+        long far = TileManager.tileKey(100, 100);
+        long near = TileManager.tileKey(0, 0);
+        cache.put(near, tile());
+        cache.put(far, tile());
+
+        cache.put(TileManager.tileKey(1, 0), tile());
+
+        // The near tile is older, but the far one is a hundred tiles away
+        assertNotNull(cache.peek(near));
+        assertNull(cache.peek(far));
+    }
+
+    @Test
+    void focusMovesWithThePlayer() {
+        TileCache cache = new TileCache(TILE_BYTES * 2, (key, pixels) -> flushed.add(key));
+        long origin = TileManager.tileKey(0, 0);
+        long destination = TileManager.tileKey(100, 100);
+        cache.put(destination, tile());
+        cache.put(origin, tile());
+        cache.setFocus(100, 100);
+
+        cache.put(TileManager.tileKey(99, 100), tile());
+
+        assertNotNull(cache.peek(destination));
+        assertNull(cache.peek(origin));
+    }
+
+    @Test
+    void dirtyTilesAreFlushedBeforeEviction() {
+        TileCache cache = new TileCache(TILE_BYTES, (key, pixels) -> flushed.add(key));
+        long dirty = TileManager.tileKey(0, 0);
+        long clean = TileManager.tileKey(1, 0);
+        cache.put(dirty, tile());
+        cache.markDirty(dirty);
+
+        cache.put(clean, tile());
+        cache.put(TileManager.tileKey(2, 0), tile());
+
+        assertEquals(LongList.of(dirty), flushed);
+        assertEquals(1, cache.getDirtyFlushes());
+    }
+
+    @Test
+    void cleanTileIsNotFlushed() {
+        TileCache cache = new TileCache(TILE_BYTES, (key, pixels) -> flushed.add(key));
+        long key = TileManager.tileKey(0, 0);
+        cache.put(key, tile());
+        cache.markDirty(key);
+        cache.markClean(key);
+
+        cache.put(TileManager.tileKey(1, 0), tile());
+
+        assertTrue(flushed.isEmpty());
+    }
+
+    @Test
+    void newestTileIsKeptOverBudget() {
+        TileCache cache = new TileCache(TILE_BYTES / 2, (key, pixels) -> flushed.add(key));
+        long key = TileManager.tileKey(0, 0);
+        int[] pixels = tile();
+        cache.put(key, pixels);
+
+        assertSame(pixels, cache.get(key));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void replacingATileKeepsItDirty() {
+        TileCache cache = new TileCache(TILE_BYTES * 4, (key, pixels) -> flushed.add(key));
+        long key = TileManager.tileKey(0, 0);
+        cache.put(key, tile());
+        cache.markDirty(key);
+        int[] replacement = new int[PIXELS * 2];
+        cache.put(key, replacement);
+
+        assertEquals(TILE_BYTES * 2, cache.getUsedBytes());
+        cache.clear();
+        assertEquals(LongList.of(key), flushed);
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    void shrinkingTheBudgetEvicts() {
+        TileCache cache = new TileCache(TILE_BYTES * 4, (key, pixels) -> flushed.add(key));
+        for (int i = 0; i < 4; i++) {
+            cache.put(TileManager.tileKey(i, 0), tile());
+        }
+
+        cache.setBudgetBytes(TILE_BYTES * 2);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getUsedBytes() <= TILE_BYTES * 2);
+    }
+
+    @Test
+    void hitsAndMissesAreCounted() {
+        TileCache cache = new TileCache(TILE_BYTES * 4, (key, pixels) -> flushed.add(key));
+        long key = TileManager.tileKey(0, 0);
+        cache.put(key, tile());
+        cache.get(key);
+        cache.get(TileManager.tileKey(5, 5));
+        cache.peek(TileManager.tileKey(6, 6));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio());
+    }
+
+    private static int[] tile() {
+        return new int[PIXELS];
+    }
+}
@@ -0,0 +1,153 @@
+package com.drenn.cartographica.client;
+
+import com.drenn.cartographica.storage.TileRegionStore;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileWriterTest {
+
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    private final List<Write> writes = new ArrayList<>();
+    private final LongList written = new LongArrayList();
+    private TileWriter writer;
+
+    @AfterEach
+    void stopWriter() {
+        if (writer != null) {
+            writer.shutdown(1000);
+        }
+    }
+
+    @Test
+    void repeatedUpdatesCoalesceIntoOneWrite() {
+        writer = newWriter(NEVER, NEVER, null);
+        TileRegionStore store = new TileRegionStore(directory, "ctr");
+        long key = TileManager.tileKey(2, -3);
+
+        int[] latest = null;
+        for (int i = 0; i < 10; i++) {
+            latest = new int[]{i};
+            writer.markDirty(store, key, latest);
+        }
+        assertEquals(1, writer.getBacklog());
+        assertSame(latest, writer.getPending(store, key));
+
+        assertEquals(0, writer.drain(1000));
+        assertEquals(1, writes.size());
+        assertSame(latest, writes.get(0).pixels());
+        assertEquals(2, writes.get(0).tileX());
+        assertEquals(-3, writes.get(0).tileZ());
+        assertEquals(10, writer.getRequestedWrites());
+        assertEquals(1, writer.getCompletedWrites());
+        assertNull(writer.getPending(store, key));
+        assertEquals(LongList.of(key), written);
+    }
+
+    @Test
+    void quietTileIsWrittenInTheBackground() throws InterruptedException {
+        CountDownLatch wrote = new CountDownLatch(1);
+        writer = newWriter(10, NEVER, wrote::countDown);
+        writer.markDirty(new TileRegionStore(directory, "ctr"), TileManager.tileKey(0, 0), new int[1]);
+
+        assertTrue(wrote.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void expediteSkipsTheQuietPeriod() throws InterruptedException {
+        CountDownLatch wrote = new CountDownLatch(1);
+        writer = newWriter(NEVER, NEVER, wrote::countDown);
+        long key = TileManager.tileKey(1, 1);
+        writer.markDirty(new TileRegionStore(directory, "ctr"), key, new int[1]);
+        writer.expedite(key);
+
+        assertTrue(wrote.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void storeSwitchWritesBothSnapshots() {
+        writer = newWriter(NEVER, NEVER, null);
+        TileRegionStore first = new TileRegionStore(directory.resolve("a"), "ctr");
+        TileRegionStore second = new TileRegionStore(directory.resolve("b"), "ctr");
+        long key = TileManager.tileKey(0, 0);
+        int[] old = new int[1];
+        int[] current = new int[1];
+
+        writer.markDirty(first, key, old);
+        writer.markDirty(second, key, current);
+        assertEquals(0, writer.drain(5000));
+
+        assertEquals(2, writes.size());
+        for (Write write : writes) {
+            assertSame(write.store() == first ? old : current, write.pixels());
+        }
+    }
+
+    @Test
+    void drainWaitsForWriteAlreadyInProgress() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        writer = newWriter(NEVER, NEVER, () -> {
+            entered.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long key = TileManager.tileKey(4, 4);
+        writer.markDirty(new TileRegionStore(directory, "ctr"), key, new int[1]);
+        writer.expedite(key);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // The writer thread owns the tile now; drain must not return before its write is done
+        assertEquals(0, writer.drain(5000));
+        assertEquals(1, writer.getCompletedWrites());
+    }
+
+    @Test
+    void failedWriteIsNotReportedAsWritten() {
+        writer = new TileWriter((store, tileX, tileZ, pixels) -> {
+            throw new IllegalStateException("disk full");
+        }, written::add, NEVER, NEVER);
+        writer.markDirty(new TileRegionStore(directory, "ctr"), TileManager.tileKey(0, 0), new int[1]);
+
+        assertEquals(0, writer.drain(1000));
+        assertEquals(0, writer.getCompletedWrites());
+        assertTrue(written.isEmpty());
+    }
+
+    private TileWriter newWriter(long quietPeriodMs, long maxDelayMs, Runnable onWrite) {
+        return new TileWriter((store, tileX, tileZ, pixels) -> {
+            if (onWrite != null) {
+                onWrite.run();
+            }
+            synchronized (writes) {
+                writes.add(new Write(store, tileX, tileZ, pixels));
+            }
+        }, key -> {
+            synchronized (written) {
+                written.add(key);
+            }
+        }, quietPeriodMs, maxDelayMs);
+    }
+
+    private record Write(TileRegionStore store, int tileX, int tileZ, int[] pixels) {
+    }
+}
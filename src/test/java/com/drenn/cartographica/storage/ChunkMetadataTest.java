@@ -0,0 +1,144 @@
+package com.drenn.cartographica.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkMetadataTest {
+
+    private static final int SIDE = 32;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void matchesOnlyTheRecordedHash() {
+        ChunkMetadata metadata = new ChunkMetadata(SIDE);
+        assertFalse(metadata.matches(3, 4, 0));
+
+        metadata.record(3, 4, 0x1234L, 1000);
+
+        assertTrue(metadata.matches(3, 4, 0x1234L));
+        assertFalse(metadata.matches(3, 4, 0x1235L));
+        assertFalse(metadata.matches(4, 3, 0x1234L));
+    }
+
+    @Test
+    void zeroHashAndTimeStillCountAsRendered() {
+        ChunkMetadata metadata = new ChunkMetadata(SIDE);
+        metadata.record(0, 0, 0, 0);
+
+        assertTrue(metadata.isRendered(0, 0));
+        assertTrue(metadata.matches(0, 0, 0));
+    }
+
+    @Test
+    void encodeRoundTrips() throws IOException {
+        ChunkMetadata metadata = new ChunkMetadata(SIDE);
+        metadata.record(0, 0, Long.MIN_VALUE, 1);
+        metadata.record(SIDE - 1, SIDE - 1, -1L, Long.MAX_VALUE);
+        metadata.record(7, 20, 42, 1_700_000_000_000L);
+
+        ChunkMetadata decoded = ChunkMetadata.decode(metadata.encode(), SIDE);
+
+        assertEquals(3, decoded.getRenderedCount());
+        assertTrue(decoded.matches(0, 0, Long.MIN_VALUE));
+        assertTrue(decoded.matches(SIDE - 1, SIDE - 1, -1L));
+        assertEquals(1_700_000_000_000L, decoded.getRenderedAt(7, 20));
+        assertArrayEquals(metadata.getRenderedBits(), decoded.getRenderedBits());
+        assertFalse(decoded.isDirty());
+    }
+
+    @Test
+    void encodeClearsDirty() {
+        ChunkMetadata metadata = new ChunkMetadata(SIDE);
+        assertFalse(metadata.isDirty());
+        metadata.record(1, 1, 1, 1);
+        assertTrue(metadata.isDirty());
+
+        metadata.encode();
+        assertFalse(metadata.isDirty());
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        ChunkMetadata metadata = new ChunkMetadata(SIDE);
+        metadata.record(1, 1, 1, 1);
+        metadata.encode();
+
+        metadata.clear();
+
+        assertTrue(metadata.isDirty());
+        assertEquals(0, metadata.getRenderedCount());
+        assertFalse(metadata.matches(1, 1, 1));
+    }
+
+    @Test
+    void renderedBitsFollowChunkIndex() {
+        ChunkMetadata metadata = new ChunkMetadata(SIDE);
+        metadata.record(5, 1, 1, 1);
+
+        long[] bits = metadata.getRenderedBits();
+        assertEquals(SIDE * SIDE / 64, bits.length);
+        assertEquals(1L << (SIDE + 5), bits[0]);
+    }
+
+    @Test
+    void badPayloadsAreRejected() {
+        byte[] valid = new ChunkMetadata(SIDE).encode();
+        assertThrows(IOException.class, () -> ChunkMetadata.decode(valid, SIDE * 2));
+        assertThrows(IOException.class, () -> ChunkMetadata.decode(new byte[12], SIDE));
+
+        ChunkMetadata metadata = new ChunkMetadata(SIDE);
+        metadata.record(1, 1, 1, 1);
+        byte[] data = metadata.encode();
+        assertThrows(IOException.class, () -> ChunkMetadata.decode(Arrays.copyOf(data, data.length - 1), SIDE));
+
+        byte[] newer = valid.clone();
+        newer[4] = (byte) (ChunkMetadata.VERSION + 1);
+        assertThrows(IOException.class, () -> ChunkMetadata.decode(newer, SIDE));
+    }
+
+    @Test
+    void snapshotIsWrittenOnlyWhenChanged() throws IOException {
+        try (ChunkMetadataStore store = new ChunkMetadataStore(directory, "ctm", SIDE)) {
+            assertNull(store.snapshot(0, 0));
+
+            store.get(0, 0).record(2, 3, 99, 1000);
+            byte[] snapshot = store.snapshot(0, 0);
+            assertNotNull(snapshot);
+            assertNull(store.snapshot(0, 0));
+
+            store.write(0, 0, snapshot);
+        }
+        try (ChunkMetadataStore store = new ChunkMetadataStore(directory, "ctm", SIDE)) {
+            assertTrue(store.get(0, 0).matches(2, 3, 99));
+        }
+    }
+
+    @Test
+    void resetIsPersisted() throws IOException {
+        try (ChunkMetadataStore store = new ChunkMetadataStore(directory, "ctm", SIDE)) {
+            store.get(1, -1).record(0, 0, 5, 1000);
+            store.save(1, -1);
+        }
+        try (ChunkMetadataStore store = new ChunkMetadataStore(directory, "ctm", SIDE)) {
+            store.reset(1, -1);
+            assertEquals(0, store.get(1, -1).getRenderedCount());
+        }
+        try (ChunkMetadataStore store = new ChunkMetadataStore(directory, "ctm", SIDE)) {
+            assertFalse(store.get(1, -1).isRendered(0, 0));
+        }
+    }
+}
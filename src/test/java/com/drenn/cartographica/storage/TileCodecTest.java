@@ -0,0 +1,140 @@
+package com.drenn.cartographica.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TileCodecTest {
+
+    private static final int SIZE = 64;
+
+    @Test
+    void paletteTileRoundTrips() throws IOException {
+        int[] pixels = randomPixels(SIZE, 12, 1);
+        byte[] data = TileCodec.encode(pixels, SIZE, SIZE);
+
+        assertEquals(1, encoding(data));
+        assertArrayEquals(pixels, TileCodec.decode(data, SIZE, SIZE));
+    }
+
+    @Test
+    void fullPaletteStaysPaletted() throws IOException {
+        int[] pixels = new int[SIZE * SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | (i % 256) * 0x010101;
+        }
+        byte[] data = TileCodec.encode(pixels, SIZE, SIZE);
+
+        assertEquals(1, encoding(data));
+        assertArrayEquals(pixels, TileCodec.decode(data, SIZE, SIZE));
+    }
+
+    @Test
+    void manyColorsFallBackToRaw() throws IOException {
+        int[] pixels = new int[SIZE * SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | i * 2654435;
+        }
+        byte[] data = TileCodec.encode(pixels, SIZE, SIZE);
+
+        assertEquals(0, encoding(data));
+        assertArrayEquals(pixels, TileCodec.decode(data, SIZE, SIZE));
+    }
+
+    @Test
+    void transparentTileRoundTrips() throws IOException {
+        int[] pixels = new int[SIZE * SIZE];
+        assertArrayEquals(pixels, TileCodec.decode(TileCodec.encode(pixels, SIZE, SIZE), SIZE, SIZE));
+    }
+
+    @Test
+    void smallTileAfterLargeOneIgnoresStaleBuffers() throws IOException {
+        // Pooled buffers are reused across calls, so a small tile after a large one must not see old bytes
+        int[] raw = randomPixels(SIZE * 2, 100_000, 3);
+        TileCodec.encode(raw, SIZE * 2, SIZE * 2);
+
+        int[] small = randomPixels(SIZE, 3, 4);
+        assertArrayEquals(small, TileCodec.decode(TileCodec.encode(small, SIZE, SIZE), SIZE, SIZE));
+    }
+
+    @Test
+    void concurrentRoundTrips() {
+        IntStream.range(0, 64).parallel().forEach(seed -> {
+            int[] pixels = randomPixels(SIZE, seed % 2 == 0 ? 20 : 5000, seed);
+            try {
+                assertArrayEquals(pixels, TileCodec.decode(TileCodec.encode(pixels, SIZE, SIZE), SIZE, SIZE));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+    }
+
+    @Test
+    void wrongSizeIsRejected() {
+        byte[] data = TileCodec.encode(new int[SIZE * SIZE], SIZE, SIZE);
+        assertThrows(IOException.class, () -> TileCodec.decode(data, SIZE * 2, SIZE * 2));
+    }
+
+    @Test
+    void garbageIsRejected() {
+        assertThrows(IOException.class, () -> TileCodec.decode(new byte[]{1, 2, 3}, SIZE, SIZE));
+        assertThrows(IOException.class, () -> TileCodec.decode(new byte[32], SIZE, SIZE));
+    }
+
+    @Test
+    void truncatedPayloadIsRejected() {
+        byte[] data = TileCodec.encode(randomPixels(SIZE, 5000, 5), SIZE, SIZE);
+        byte[] truncated = Arrays.copyOf(data, data.length / 2);
+        assertThrows(IOException.class, () -> TileCodec.decode(truncated, SIZE, SIZE));
+    }
+
+    @Test
+    void newerVersionIsRejected() {
+        byte[] data = TileCodec.encode(new int[SIZE * SIZE], SIZE, SIZE);
+        data[4] = (byte) (TileCodec.VERSION + 1);
+        assertThrows(IOException.class, () -> TileCodec.decode(data, SIZE, SIZE));
+    }
+
+    @Test
+    void legacyPngIsDecoded() throws IOException {
+        int[] pixels = randomPixels(SIZE, 40, 6);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF000000;
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        TileCodec.writePng(pixels, SIZE, SIZE, png);
+
+        assertArrayEquals(pixels, TileCodec.decode(png.toByteArray(), SIZE, SIZE));
+    }
+
+    @Test
+    void swapRedBlueIsItsOwnInverse() {
+        assertEquals(0xFF332211, TileCodec.swapRedBlue(0xFF112233));
+        assertEquals(0x80ABCDEF, TileCodec.swapRedBlue(TileCodec.swapRedBlue(0x80ABCDEF)));
+    }
+
+    private static int[] randomPixels(int size, int colors, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] palette = new int[colors];
+        for (int i = 0; i < colors; i++) {
+            palette[i] = random.nextInt();
+        }
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = palette[random.nextInt(colors)];
+        }
+        return pixels;
+    }
+
+    private static int encoding(byte[] data) {
+        return data[5];
+    }
+}
@@ -0,0 +1,125 @@
+package com.drenn.cartographica.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileLayersTest {
+
+    private static final int SIZE = 32;
+
+    @Test
+    void columnsRoundTrip() throws IOException {
+        TileLayers layers = new TileLayers(SIZE);
+        layers.setColumn(0, -64, "minecraft:stone", "minecraft:plains", 0);
+        layers.setColumn(1, 62, "minecraft:water[level=0]", "minecraft:ocean", 17);
+        layers.setColumn(SIZE * SIZE - 1, 319, "minecraft:grass_block[snowy=false]", "minecraft:plains", 0);
+
+        TileLayers decoded = TileLayers.decode(layers.encode(), SIZE);
+
+        assertColumn(decoded, 0, -64, "minecraft:stone", "minecraft:plains", 0);
+        assertColumn(decoded, 1, 62, "minecraft:water[level=0]", "minecraft:ocean", 17);
+        assertColumn(decoded, SIZE * SIZE - 1, 319, "minecraft:grass_block[snowy=false]", "minecraft:plains", 0);
+        assertEquals(layers.getBlockPalette(), decoded.getBlockPalette());
+        assertEquals(layers.getBiomePalette(), decoded.getBiomePalette());
+    }
+
+    @Test
+    void unsetColumnsAreUnmapped() throws IOException {
+        TileLayers layers = new TileLayers(SIZE);
+        layers.setColumn(5, 70, "minecraft:sand", "minecraft:desert", 0);
+        layers.setColumn(6, 70, "", "minecraft:desert", 0);
+
+        TileLayers decoded = TileLayers.decode(layers.encode(), SIZE);
+
+        assertTrue(decoded.isMapped(5));
+        assertFalse(decoded.isMapped(6));
+        assertFalse(decoded.isMapped(7));
+        assertEquals(0, decoded.getBlockIndex(7));
+        assertEquals(0, decoded.getBiomeIndex(7));
+    }
+
+    @Test
+    void namesShareOnePaletteEntry() {
+        TileLayers layers = new TileLayers(SIZE);
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            layers.setColumn(i, 64, i % 2 == 0 ? "minecraft:stone" : "minecraft:dirt", "minecraft:plains", 0);
+        }
+
+        assertEquals(3, layers.getBlockPalette().size());
+        assertEquals(2, layers.getBiomePalette().size());
+        assertEquals(layers.getBlockIndex(0), layers.getBlockIndex(2));
+    }
+
+    @Test
+    void waterDepthIsClamped() throws IOException {
+        TileLayers layers = new TileLayers(SIZE);
+        layers.setColumn(0, 0, "minecraft:water", "minecraft:ocean", 1000);
+        layers.setColumn(1, 0, "minecraft:water", "minecraft:ocean", -3);
+
+        TileLayers decoded = TileLayers.decode(layers.encode(), SIZE);
+
+        assertEquals(TileLayers.MAX_WATER_DEPTH, decoded.getWaterDepth(0));
+        assertEquals(0, decoded.getWaterDepth(1));
+    }
+
+    @Test
+    void fullBiomePaletteRoundTrips() throws IOException {
+        TileLayers layers = new TileLayers(SIZE);
+        for (int i = 0; i < 300; i++) {
+            layers.setColumn(i, 64, "minecraft:stone", "test:biome_" + i, 0);
+        }
+
+        // 255 names fit beside the unknown entry; later biomes are stored as unknown
+        assertEquals(256, layers.getBiomePalette().size());
+        assertEquals(255, layers.getBiomeIndex(254));
+        assertEquals(0, layers.getBiomeIndex(255));
+        assertTrue(layers.isMapped(299));
+
+        TileLayers decoded = TileLayers.decode(layers.encode(), SIZE);
+        assertEquals(layers.getBiomePalette(), decoded.getBiomePalette());
+        assertEquals("test:biome_254", decoded.getBiomePalette().get(decoded.getBiomeIndex(254)));
+    }
+
+    @Test
+    void decodedPalettesKeepIndexing() throws IOException {
+        TileLayers layers = new TileLayers(SIZE);
+        layers.setColumn(0, 64, "minecraft:stone", "minecraft:plains", 0);
+        TileLayers decoded = TileLayers.decode(layers.encode(), SIZE);
+
+        // A decoded tile is updated in place when new chunks arrive
+        decoded.setColumn(1, 64, "minecraft:stone", "minecraft:plains", 0);
+        decoded.setColumn(2, 64, "minecraft:dirt", "minecraft:forest", 0);
+
+        assertEquals(decoded.getBlockIndex(0), decoded.getBlockIndex(1));
+        assertEquals(3, decoded.getBlockPalette().size());
+        assertEquals(3, decoded.getBiomePalette().size());
+    }
+
+    @Test
+    void badPayloadsAreRejected() {
+        byte[] data = new TileLayers(SIZE).encode();
+
+        assertThrows(IOException.class, () -> TileLayers.decode(data, SIZE * 2));
+        assertThrows(IOException.class, () -> TileLayers.decode(new byte[4], SIZE));
+        assertThrows(IOException.class, () -> TileLayers.decode(Arrays.copyOf(data, data.length / 2), SIZE));
+
+        byte[] newer = data.clone();
+        newer[4] = (byte) (TileLayers.VERSION + 1);
+        assertThrows(IOException.class, () -> TileLayers.decode(newer, SIZE));
+    }
+
+    private static void assertColumn(TileLayers layers, int index, int height, String block, String biome, int waterDepth) {
+        assertTrue(layers.isMapped(index));
+        assertEquals(height, layers.getHeight(index));
+        assertEquals(block, layers.getBlockPalette().get(layers.getBlockIndex(index)));
+        assertEquals(biome, layers.getBiomePalette().get(layers.getBiomeIndex(index)));
+        assertEquals(waterDepth, layers.getWaterDepth(index));
+    }
+}
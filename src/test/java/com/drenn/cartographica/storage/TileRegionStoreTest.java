@@ -0,0 +1,160 @@
+package com.drenn.cartographica.storage;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileRegionStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writtenTilesReadBack() throws IOException {
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            store.write(0, 0, payload(100, 1));
+            store.write(-1, 31, payload(5000, 2));
+            store.write(40, -70, payload(1, 3));
+
+            assertArrayEquals(payload(100, 1), store.read(0, 0));
+            assertArrayEquals(payload(5000, 2), store.read(-1, 31));
+            assertArrayEquals(payload(1, 3), store.read(40, -70));
+            assertNull(store.read(1, 0));
+            assertFalse(store.exists(1, 0));
+        }
+    }
+
+    @Test
+    void tilesSurviveReopening() throws IOException {
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            store.write(3, 4, payload(9000, 1));
+        }
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            assertTrue(store.exists(3, 4));
+            assertArrayEquals(payload(9000, 1), store.read(3, 4));
+        }
+    }
+
+    @Test
+    void rewritesReuseFreedSlots() throws IOException {
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            store.write(0, 0, payload(20_000, 0));
+            store.write(1, 0, payload(20_000, 1));
+            long size = Files.size(store.regionPath(0, 0));
+
+            // Each rewrite takes a fresh slot and frees the old one, so two slots per tile are enough
+            for (int round = 0; round < 20; round++) {
+                store.write(0, 0, payload(20_000, round));
+                store.write(1, 0, payload(20_000, round + 1));
+            }
+            assertTrue(Files.size(store.regionPath(0, 0)) <= size * 2,
+                    "region grew to " + Files.size(store.regionPath(0, 0)) + " bytes");
+            assertArrayEquals(payload(20_000, 19), store.read(0, 0));
+            assertArrayEquals(payload(20_000, 20), store.read(1, 0));
+        }
+    }
+
+    @Test
+    void smallerPayloadFitsFreedSlot() throws IOException {
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            store.write(0, 0, payload(40_000, 0));
+            store.write(1, 0, payload(10, 1));
+            store.write(0, 0, payload(100, 2));
+            long size = Files.size(store.regionPath(0, 0));
+
+            // The first tile's old slot is free and large enough for this one
+            store.write(2, 0, payload(30_000, 3));
+            assertEquals(size, Files.size(store.regionPath(0, 0)));
+            assertArrayEquals(payload(30_000, 3), store.read(2, 0));
+            assertArrayEquals(payload(100, 2), store.read(0, 0));
+            assertArrayEquals(payload(10, 1), store.read(1, 0));
+        }
+    }
+
+    @Test
+    void freeSlotsAreFoundAfterReopening() throws IOException {
+        long size;
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            store.write(0, 0, payload(40_000, 0));
+            store.write(1, 0, payload(10, 1));
+            store.write(0, 0, payload(100, 2));
+            size = Files.size(store.regionPath(0, 0));
+        }
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            store.write(2, 0, payload(30_000, 3));
+            assertEquals(size, Files.size(store.regionPath(0, 0)));
+            assertArrayEquals(payload(100, 2), store.read(0, 0));
+            assertArrayEquals(payload(10, 1), store.read(1, 0));
+            assertArrayEquals(payload(30_000, 3), store.read(2, 0));
+        }
+    }
+
+    @Test
+    void writeIfAbsentKeepsExistingPayload() throws IOException {
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            assertTrue(store.writeIfAbsent(5, 5, payload(10, 1)));
+            assertFalse(store.writeIfAbsent(5, 5, payload(10, 2)));
+            assertArrayEquals(payload(10, 1), store.read(5, 5));
+        }
+    }
+
+    @Test
+    void forEachTileVisitsEveryTile() throws IOException {
+        LongSet written = new LongOpenHashSet();
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            int[][] tiles = {{0, 0}, {31, 31}, {32, 0}, {-1, -1}, {-33, 64}};
+            for (int[] tile : tiles) {
+                store.write(tile[0], tile[1], payload(50, tile[0]));
+                written.add(key(tile[0], tile[1]));
+            }
+
+            LongSet visited = new LongOpenHashSet();
+            store.forEachTile((tileX, tileZ) -> visited.add(key(tileX, tileZ)));
+            assertEquals(written, visited);
+        }
+    }
+
+    @Test
+    void otherFilesAreNotRegions() throws IOException {
+        Files.write(directory.resolve("r.0.0.ctr"), payload(TileRegionStore.REGION_SIZE * TileRegionStore.REGION_SIZE * 16 + 16, 7));
+        try (TileRegionStore store = new TileRegionStore(directory, "ctr")) {
+            assertThrows(IOException.class, () -> store.read(0, 0));
+        }
+    }
+
+    @Test
+    void closedStoreRejectsAccess() throws IOException {
+        TileRegionStore store = new TileRegionStore(directory, "ctr");
+        store.write(0, 0, payload(10, 1));
+        store.close();
+
+        assertThrows(IOException.class, () -> store.read(0, 0));
+        assertThrows(IOException.class, () -> store.write(0, 0, payload(10, 2)));
+    }
+
+    private static long key(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+
+    private static byte[] payload(int length, int seed) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) seed);
+        if (length > 0) {
+            data[0] = (byte) (seed * 31 + 1);
+        }
+        return data;
+    }
+}